@@ -0,0 +1,61 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+//
+//  BenchmarkGames: An object with only static methods (so don't instantiate it, no need)
+//  that sets up the same boards and games from the same seed every time, so benchmark runs
+//  can be compared with each other.
+//
+
+class BenchmarkGames {
+    static final long SEED = 42;
+
+    static ArrayList<String> players(int n) {
+        ArrayList<String> ids = new ArrayList<String>();
+        for (int i = 1; i <= n; i++) ids.add("player" + i);
+        return ids;
+    }
+
+    static WoodsyGameData game(long seed, int players, int turns) {
+        // A game with the given number of turns already played at random.
+        ArrayList<String> ids = BenchmarkGames.players(players);
+        WoodsyGameData game = new WoodsyGameData(ids, seed);
+        WoodsyRandom rnd = new WoodsyRandom(seed);
+        for (int t = 0; t < turns && !game.gameOver(); t++) {
+            game.beginTurn(ids.get(t % players));
+            int guard = 0;
+            while (guard++ < 64 && WoodsyAI.playRandomMove(game, rnd)) { }
+            game.endTurn();
+        }
+        return game;
+    }
+
+    static WoodsyBoardData board(long seed, int tiles) {
+        // A board with all the people and houses on the edge and some tiles in the middle.
+        Random rnd = new Random(seed);
+        int[] bag = Pieces.pieces(seed);
+        WoodsyBoardData b = new WoodsyBoardData();
+        for (int n = 1; n <= Pieces.numberOfPeople(); n++) {
+            BenchmarkGames.placeOnEdge(b, Pieces.createPersonPiece(n), rnd);
+            BenchmarkGames.placeOnEdge(b, Pieces.createHousePiece(n), rnd);
+        }
+        for (int i = 0; i < tiles && i < bag.length; i++) {
+            int index;
+            do {
+                index = rnd.nextInt(WoodsyBoardData.CELLS);
+            } while (WoodsyBoardData.isEdgeIndex(index) || !Pieces.isBlank(b.getCellAt(index)));
+            b.setCellAt(index, bag[i]);
+        }
+        return b;
+    }
+
+    private static void placeOnEdge(WoodsyBoardData b, int p, Random rnd) {
+        long targets = WoodsyRules.placePersonOrHouseTargets(b, p);
+        int skip = rnd.nextInt(Long.bitCount(targets));
+        for (int i = 0; i < skip; i++) targets &= targets - 1;
+        int index = Long.numberOfTrailingZeros(targets);
+        b.setCellAt(index, Pieces.combinePieces(b.getCellAt(index), p));
+    }
+}
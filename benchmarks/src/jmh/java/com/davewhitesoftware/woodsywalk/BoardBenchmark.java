@@ -0,0 +1,71 @@
+package com.davewhitesoftware.woodsywalk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+//
+//  The WoodsyBoardData questions the game asks all the time: where a person is, whether the
+//  board is finished, and copying a board (which the game does at the start and end of every
+//  turn).  The boards come from BenchmarkGames, so they are the same on every run.
+//
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BoardBenchmark {
+    private WoodsyBoardData board;
+    private WoodsyBoardData winningBoard;
+    private WoodsyBoardData target;
+
+    @Setup
+    public void setup() {
+        this.board = BenchmarkGames.board(BenchmarkGames.SEED, 20);
+        // the same board with every person walked home.
+        this.winningBoard = this.board.snapshot();
+        for (int n = 1; n <= Pieces.numberOfPeople(); n++) {
+            int person = this.winningBoard.personIndex(n);
+            int house = this.winningBoard.houseIndex(n);
+            this.winningBoard.setCellAt(person, Pieces.setPersonNumber(this.winningBoard.getCellAt(person), 0));
+            this.winningBoard.setCellAt(house, Pieces.setPersonNumber(this.winningBoard.getCellAt(house), n));
+        }
+        this.target = new WoodsyBoardData();
+    }
+
+    @Benchmark
+    public int locatePerson() {
+        int n = 0;
+        for (int i = 1; i <= Pieces.numberOfPeople(); i++) n += this.board.locatePerson(i).x();
+        return n;
+    }
+
+    @Benchmark
+    public boolean isWinningBoardNo() {
+        return this.board.isWinningBoard();
+    }
+
+    @Benchmark
+    public boolean isWinningBoardYes() {
+        return this.winningBoard.isWinningBoard();
+    }
+
+    @Benchmark
+    public WoodsyBoardData copyFrom() {
+        this.target.copyFrom(this.board);
+        return this.target;
+    }
+
+    @Benchmark
+    public WoodsyBoardData copyFromThenChange() {
+        // copying is copy-on-write, so this also pays for the copy on the first change.
+        this.target.copyFrom(this.board);
+        this.target.setCellAt(9, this.board.getCellAt(9));
+        return this.target;
+    }
+}
@@ -0,0 +1,103 @@
+package com.davewhitesoftware.woodsywalk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+//
+//  A turn of WoodsyGameData: beginning it, playing a piece, and ending it.  The game is a
+//  fixed-seed game with some turns already played (see BenchmarkGames), so there are tiles,
+//  people and houses on the board.
+//
+//  playPieceAt and endTurn change the game, so they are measured on a fork each time; fork
+//  measures that on its own so it can be taken off.  applyTurn is wholeTurn as one call.
+//
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameBenchmark {
+    @Param({"2", "4"})
+    public int players;
+
+    @Param({"12"})
+    public int turnsPlayed;
+
+    private WoodsyGameData game;        // between turns
+    private WoodsyGameData inTurn;      // with the next turn begun
+    private WoodsyGameData played;      // with a piece played in that turn
+    private String nextPlayer;
+    private int piece;
+    private int cell;
+    private int[] moves;
+
+    @Setup
+    public void setup() {
+        this.game = BenchmarkGames.game(BenchmarkGames.SEED, this.players, this.turnsPlayed);
+        this.nextPlayer = BenchmarkGames.players(this.players).get(this.turnsPlayed % this.players);
+        this.inTurn = this.game.fork();
+        this.inTurn.beginTurn(this.nextPlayer);
+        this.piece = this.inTurn.getNextPiece();
+        long moves = this.inTurn.legalMoves(this.piece);
+        if (moves == 0) throw new IllegalStateException("no legal move in the benchmark game; change turnsPlayed");
+        this.cell = Long.numberOfTrailingZeros(moves);
+        this.moves = new int[] { this.cell };
+        this.played = this.inTurn.fork();
+        this.played.playPieceAt(this.piece, WoodsyBoardData.xOf(this.cell), WoodsyBoardData.yOf(this.cell));
+    }
+
+    @Benchmark
+    public WoodsyGameData fork() {
+        return this.inTurn.fork();
+    }
+
+    @Benchmark
+    public int beginTurn() {
+        this.game.beginTurn(this.nextPlayer);
+        return this.game.getNextPiece();
+    }
+
+    @Benchmark
+    public int playPieceAt() {
+        WoodsyGameData g = this.inTurn.fork();
+        return g.playPieceAt(this.piece, WoodsyBoardData.xOf(this.cell), WoodsyBoardData.yOf(this.cell));
+    }
+
+    @Benchmark
+    public int playPieceAtAndUndo() {
+        // the same move, undone again, without needing a fork.
+        int result = this.inTurn.playPieceAt(this.piece, WoodsyBoardData.xOf(this.cell), WoodsyBoardData.yOf(this.cell));
+        this.inTurn.rewindTurn();
+        return result;
+    }
+
+    @Benchmark
+    public WoodsyGameData endTurn() {
+        WoodsyGameData g = this.played.fork();
+        g.endTurn();
+        return g;
+    }
+
+    @Benchmark
+    public WoodsyGameData wholeTurn() {
+        WoodsyGameData g = this.game.fork();
+        g.beginTurn(this.nextPlayer);
+        g.playPieceAt(this.piece, WoodsyBoardData.xOf(this.cell), WoodsyBoardData.yOf(this.cell));
+        g.endTurn();
+        return g;
+    }
+
+    @Benchmark
+    public WoodsyGameData applyTurn() {
+        WoodsyGameData g = this.game.fork();
+        g.applyTurn(this.nextPlayer, this.moves);
+        return g;
+    }
+}
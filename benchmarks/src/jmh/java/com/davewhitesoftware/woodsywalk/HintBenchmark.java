@@ -0,0 +1,44 @@
+package com.davewhitesoftware.woodsywalk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+//
+//  The hint engine's search, to a fixed depth on the benchmark thread, from the start of a
+//  turn in a fixed-seed game.  Divide the nodes in the hint by the time to get nodes per
+//  second, the number to compare between devices.
+//
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HintBenchmark {
+    @Param({"3", "5"})
+    public int depth;
+
+    @Param({"12", "30"})
+    public int turnsPlayed;
+
+    private WoodsyHintEngine engine = new WoodsyHintEngine();
+    private WoodsyGameData inTurn;
+
+    @Setup
+    public void setup() {
+        WoodsyGameData game = BenchmarkGames.game(BenchmarkGames.SEED, 2, this.turnsPlayed);
+        this.inTurn = game.fork();
+        this.inTurn.beginTurn(BenchmarkGames.players(2).get(this.turnsPlayed % 2));
+    }
+
+    @Benchmark
+    public WoodsyHintEngine.Hint search() {
+        return this.engine.searchToDepth(this.inTurn, this.depth);
+    }
+}
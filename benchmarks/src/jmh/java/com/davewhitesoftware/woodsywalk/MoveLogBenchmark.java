@@ -0,0 +1,79 @@
+package com.davewhitesoftware.woodsywalk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+//
+//  Looking back over a saved match: opening its move log (WoodsyMoveLogReader) and getting the
+//  game at a turn, with checkpoints every turn, every 16 turns, and only at the start.  The
+//  log is a whole fixed-seed game played at random, written to a temporary file.
+//
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MoveLogBenchmark {
+    @Param({"1", "16", "1000"})
+    public int checkpointInterval;
+
+    private File file;
+    private WoodsyMoveLogReader reader;
+    private int lastTurn;
+
+    @Setup
+    public void setup() throws IOException {
+        this.file = File.createTempFile("woodsy", ".log");
+        ArrayList<String> ids = BenchmarkGames.players(2);
+        WoodsyGameData game = new WoodsyGameData(ids, BenchmarkGames.SEED);
+        WoodsyRandom rnd = new WoodsyRandom(BenchmarkGames.SEED);
+        WoodsyMoveLog log = WoodsyMoveLog.create(this.file, game, this.checkpointInterval);
+        int[] actions = new int[WoodsyBoardData.CELLS + 2];
+        for (int t = 0; !game.gameOver() && t < 1000; t++) {
+            log.beginTurn(game, ids.get(t % ids.size()));
+            int n;
+            for (int moves = 0; moves < 64 && (n = WoodsyAI.listActions(game, actions)) > 0; moves++) {
+                int action = actions[rnd.nextInt(n)];
+                if (action == WoodsyAI.STOP) break;
+                int p = game.getNextPiece();
+                if (action == WoodsyAI.DISCARD) log.playPieceDiscard(game, p);
+                else log.playPieceAt(game, p, WoodsyBoardData.xOf(action), WoodsyBoardData.yOf(action));
+            }
+            log.endTurn(game);
+        }
+        log.close();
+        this.reader = new WoodsyMoveLogReader(this.file);
+        this.lastTurn = this.reader.turns();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.file.delete();
+    }
+
+    @Benchmark
+    public WoodsyMoveLogReader open() throws IOException {
+        return new WoodsyMoveLogReader(this.file);
+    }
+
+    @Benchmark
+    public WoodsyGameData gameAtLastTurn() {
+        return this.reader.gameAt(this.lastTurn);
+    }
+
+    @Benchmark
+    public WoodsyGameData gameAtMiddle() {
+        return this.reader.gameAt(this.lastTurn / 2);
+    }
+}
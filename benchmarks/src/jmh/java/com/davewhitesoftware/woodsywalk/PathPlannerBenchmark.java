@@ -0,0 +1,52 @@
+package com.davewhitesoftware.woodsywalk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+//
+//  WoodsyPathPlanner planning a person's walk.  The walk is the one that took the most work
+//  to plan out of every walk in a few hundred fixed-seed games played at random, so this is
+//  close to the most planning a tap ever has to wait for.
+//
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PathPlannerBenchmark {
+    private WoodsyPathPlanner planner = new WoodsyPathPlanner();
+    private WoodsyGameData walking;     // a game in the middle of the hardest walk found
+
+    @Setup
+    public void setup() {
+        ArrayList<String> ids = BenchmarkGames.players(2);
+        int mostStates = -1;
+        for (long seed = BenchmarkGames.SEED; seed < BenchmarkGames.SEED + 300; seed++) {
+            WoodsyGameData game = new WoodsyGameData(ids, seed);
+            WoodsyRandom rnd = new WoodsyRandom(seed);
+            for (int t = 0; t < 200 && !game.gameOver(); t++) {
+                game.beginTurn(ids.get(t % ids.size()));
+                int guard = 0;
+                do {
+                    if (game.movingPerson() && this.planner.plan(game) >= 0 && this.planner.states() > mostStates) {
+                        mostStates = this.planner.states();
+                        this.walking = game.fork();
+                    }
+                } while (guard++ < 64 && WoodsyAI.playRandomMove(game, rnd));
+                game.endTurn();
+            }
+        }
+    }
+
+    @Benchmark
+    public int plan() {
+        return this.planner.plan(this.walking);
+    }
+}
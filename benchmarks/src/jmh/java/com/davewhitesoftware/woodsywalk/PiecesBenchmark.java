@@ -0,0 +1,166 @@
+package com.davewhitesoftware.woodsywalk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//
+//  Compares the table-driven Pieces predicates against the original bit-twiddling versions
+//  (kept below in LegacyPieces) over a fixed stream of random pieces: path tiles from the bag,
+//  plain people and houses, green grass, and tiles with people and houses on them.  combine
+//  puts neighboring pieces of the stream together, which fails as often as it succeeds.
+//
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PiecesBenchmark {
+    private static final int STREAM_LENGTH = 4096;     // a power of 2, so we can wrap with a mask
+    private int[] stream;
+    private int[] dx, dy;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        int[] bag = Pieces.pieces();
+        this.stream = new int[STREAM_LENGTH];
+        this.dx = new int[STREAM_LENGTH];
+        this.dy = new int[STREAM_LENGTH];
+        for (int i = 0; i < STREAM_LENGTH; i++) {
+            int p;
+            switch (rnd.nextInt(5)) {
+                case 0: p = Pieces.createPersonPiece(rnd.nextInt(4) + 1); break;
+                case 1: p = Pieces.createHousePiece(rnd.nextInt(4) + 1); break;
+                case 2: p = Pieces.setHouseNumber(Pieces.createGreenGrassPiece(), rnd.nextInt(5)); break;
+                case 3: p = Pieces.setPersonNumber(bag[rnd.nextInt(bag.length)], rnd.nextInt(5)); break;
+                default: p = bag[rnd.nextInt(bag.length)];
+            }
+            this.stream[i] = p;
+            // mostly neighbors, with the odd diagonal or far-away cell
+            this.dx[i] = rnd.nextInt(3) - 1;
+            this.dy[i] = (this.dx[i] == 0) ? (rnd.nextBoolean() ? 1 : -1) : rnd.nextInt(3) - 1;
+        }
+    }
+
+    //-- Classifying pieces
+    @Benchmark
+    public int classifyTables() {
+        int n = 0;
+        for (int p : this.stream) {
+            if (Pieces.isTile(p)) n += Pieces.numberMoves(p);
+            else if (Pieces.isPerson(p)) n += 7;
+            else if (Pieces.isHouse(p)) n += 13;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int classifyLegacy() {
+        int n = 0;
+        for (int p : this.stream) {
+            if (LegacyPieces.isTile(p)) n += LegacyPieces.numberMoves(p);
+            else if (LegacyPieces.isPerson(p)) n += 7;
+            else if (LegacyPieces.isHouse(p)) n += 13;
+        }
+        return n;
+    }
+
+    //-- Connecting neighboring pieces
+    @Benchmark
+    public int connectTables() {
+        int n = 0;
+        int[] s = this.stream;
+        for (int i = 0; i < STREAM_LENGTH; i++) {
+            if (Pieces.piecesConnect(s[i], s[(i + 1) & (STREAM_LENGTH - 1)], 3, 3, 3 + this.dx[i], 3 + this.dy[i])) n++;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int connectLegacy() {
+        int n = 0;
+        int[] s = this.stream;
+        for (int i = 0; i < STREAM_LENGTH; i++) {
+            if (LegacyPieces.piecesConnect(s[i], s[(i + 1) & (STREAM_LENGTH - 1)], 3, 3, 3 + this.dx[i], 3 + this.dy[i])) n++;
+        }
+        return n;
+    }
+
+    //-- Special piece checks (these used to build the special piece on every call)
+    @Benchmark
+    public int specialTables() {
+        int n = 0;
+        for (int p : this.stream) {
+            if (Pieces.isGreenGrassPiece(p) || Pieces.isFailurePiece(p)) n++;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int specialLegacy() {
+        int n = 0;
+        for (int p : this.stream) {
+            if (LegacyPieces.isGreenGrassPiece(p) || LegacyPieces.isFailurePiece(p)) n++;
+        }
+        return n;
+    }
+
+    //-- Putting people and houses on tiles
+    @Benchmark
+    public int combine() {
+        int n = 0;
+        int[] s = this.stream;
+        for (int i = 0; i < STREAM_LENGTH; i++) n += Pieces.combinePieces(s[i], s[(i + 1) & (STREAM_LENGTH - 1)]);
+        return n;
+    }
+
+    //
+    //  The predicates exactly as they were before the lookup tables, for comparison.
+    //
+    static class LegacyPieces {
+        static boolean up(int p) { return ((p & 0b100000) != 0); }
+        static boolean down(int p) { return ((p & 0b10000) != 0); }
+        static boolean left(int p) { return ((p & 0b1000) != 0); }
+        static boolean right(int p) { return ((p & 0b100) != 0); }
+        static int personNumber(int p) { return ((p >> 12) & 0b111); }
+        static int houseNumber(int p) { return ((p >> 15) & 0b111); }
+        static boolean isHouse(int p) {
+            return ((p & 0b000111111111111111) == 0) && LegacyPieces.houseNumber(p) > 0;
+        }
+        static boolean isPerson(int p) {
+            return ((p & 0b111000111111111111) == 0) && LegacyPieces.personNumber(p) > 0;
+        }
+        static boolean isPersonAndHouse(int p) {
+            return ((p & 0b000000111111111111) == 0);
+        }
+        static boolean isTile(int p) {
+            return ((!LegacyPieces.isHouse(p)) && (!LegacyPieces.isPerson(p)) && (!LegacyPieces.isPersonAndHouse(p)));
+        }
+        static int numberMoves(int p) {
+            return ((LegacyPieces.up(p)? 1 : 0) + (LegacyPieces.down(p)? 1: 0) + (LegacyPieces.left(p)? 1: 0)
+                    + (LegacyPieces.right(p)? 1: 0));
+        }
+        static boolean piecesConnect(int a, int b, int ax, int ay, int bx, int by) {
+            if (Math.abs(ax-bx) > 1) return false;
+            if (Math.abs(ay-by) > 1) return false;
+            if (ax==bx && ay==by) return false;
+            if (ax==bx && ay<by && LegacyPieces.down(a) && LegacyPieces.up(b)) return true;
+            if (ax==bx && ay>by && LegacyPieces.up(a) && LegacyPieces.down(b)) return true;
+            if (ay==by && ax<bx && LegacyPieces.right(a) && LegacyPieces.left(b)) return true;
+            if (ay==by && ax>bx && LegacyPieces.left(a) && LegacyPieces.right(b)) return true;
+            return false;
+        }
+        static int createPiece(int pieceNumber) {
+            return Pieces.createPiece(false,false,false,false,false,false,pieceNumber,0,0);
+        }
+        static boolean isFailurePiece(int p) { return p == LegacyPieces.createPiece(61); }
+        static boolean isGreenGrassPiece(int p) { return p == LegacyPieces.createPiece(60); }
+    }
+}
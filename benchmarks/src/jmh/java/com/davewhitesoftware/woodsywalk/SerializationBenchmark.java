@@ -0,0 +1,110 @@
+package com.davewhitesoftware.woodsywalk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+//
+//  What it costs to send a game between turns: Java serialization of a WoodsyGameData against
+//  the game's own binary format (writeTo/readFrom, into a buffer that is kept between calls),
+//  and WoodsyTurn.persist/unpersist of a turn carrying the game in its binary envelope, against
+//  reading an old JSON turn that carried the Java-serialized game as text.  The game is a
+//  fixed-seed game partway through.
+//
+//  For the payload sizes themselves, run WoodsyPayloadSizes in the tools module.
+//
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+    @Param({"2", "4"})
+    public int players;
+
+    private WoodsyGameData game;
+    private byte[] serialized;
+    private WoodsyTurn turn;
+    private byte[] persisted;
+    private byte[] persistedJson;
+    private ByteBuffer buffer;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setup() throws IOException, JSONException {
+        this.game = BenchmarkGames.game(BenchmarkGames.SEED, this.players, 12);
+        this.serialized = SerializationBenchmark.serialize(this.game);
+        this.turn = new WoodsyTurn();
+        this.turn.state = this.game.toByteArray();
+        this.turn.turnCounter = 12;
+        this.persisted = this.turn.persist();
+        JSONObject json = new JSONObject();
+        json.put("data", Base64.getEncoder().encodeToString(this.serialized));
+        json.put("turnCounter", 12);
+        this.persistedJson = json.toString().getBytes("UTF-8");
+        this.buffer = ByteBuffer.allocate(8192);
+        this.encoded = ByteBuffer.wrap(this.game.toByteArray());
+    }
+
+    private static byte[] serialize(Object o) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(o);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializeGame() throws IOException {
+        return SerializationBenchmark.serialize(this.game);
+    }
+
+    @Benchmark
+    public Object deserializeGame() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(this.serialized));
+        return in.readObject();
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        this.buffer.clear();
+        return this.game.writeTo(this.buffer);
+    }
+
+    @Benchmark
+    public WoodsyGameData decodeBinary() {
+        this.encoded.rewind();
+        return WoodsyGameData.readFrom(this.encoded);
+    }
+
+    @Benchmark
+    public byte[] persistTurn() {
+        return this.turn.persist();
+    }
+
+    @Benchmark
+    public WoodsyTurn unpersistTurn() {
+        return WoodsyTurn.unpersist(this.persisted);
+    }
+
+    @Benchmark
+    public WoodsyTurn unpersistJsonTurn() {
+        return WoodsyTurn.unpersist(this.persistedJson);
+    }
+}
@@ -0,0 +1,14 @@
+package android.util;
+
+//
+//  A stand-in for Android's Log, so WoodsyTurn can run in the benchmarks on a desktop JVM.
+//  It throws the messages away, the same as a release build with logging turned off would.
+//
+
+public final class Log {
+    private Log() { }
+
+    public static int d(String tag, String msg) { return 0; }
+    public static int e(String tag, String msg) { return 0; }
+    public static int e(String tag, String msg, Throwable tr) { return 0; }
+}
@@ -27,11 +27,57 @@ import java.util.Random;
 //  You don't need to know that, though, just call the methods in this class to process the pieces.
 //  The pieces are NOT exactly the same as any other game that may have inspired this one!
 //
+//  The per-piece questions that depend only on the low 12 bits (directions, coins, number of
+//  moves) are answered from a precomputed table, and whether two
+//  adjacent pieces connect is a single lookup in a second table keyed by both pieces' directions
+//  and which way apart they are.  Both tables are built once when the class loads.
+//
 
 public class Pieces {
-    public static void shuffleArray(int[] ar) {
+    // Special pieces, as constants so the checks below don't have to build them every time.
+    private static final int END_OF_TURN_PIECE = 63 << 6;
+    private static final int SUCCESS_PIECE = 62 << 6;
+    private static final int FAILURE_PIECE = 61 << 6;
+    private static final int GREEN_GRASS_PIECE = 60 << 6;
+
+    //  Attribute table, indexed by the low 12 bits of a piece:
+    //  Bits 3-0:   direction mask, same order as the piece (up, down, left, right)
+    //  Bits 5-4:   coin mask, same order as the piece (silver, gold)
+    //  Bits 8-6:   number of moves (count of directions)
+    private static final short[] ATTRIBUTES = new short[1 << 12];
+
+    //  Connection table, indexed by (delta << 8) | (directions of a << 4) | (directions of b),
+    //  where delta = (dy + 1) * 3 + (dx + 1) is the position of b relative to a.
+    private static final boolean[] CONNECTS = new boolean[9 << 8];
+
+    static {
+        for (int p = 0; p < ATTRIBUTES.length; p++) {
+            int directions = (p >> 2) & 0b1111;
+            ATTRIBUTES[p] = (short) (directions | ((p & 0b11) << 4) | (Integer.bitCount(directions) << 6));
+        }
+        for (int a = 0; a < 16; a++) {
+            for (int b = 0; b < 16; b++) {
+                // a above b, a below b, a left of b, a right of b.  (the direction bits are up, down, left, right = 8, 4, 2, 1)
+                CONNECTS[(7 << 8) | (a << 4) | b] = ((a & 0b0100) != 0) && ((b & 0b1000) != 0);
+                CONNECTS[(1 << 8) | (a << 4) | b] = ((a & 0b1000) != 0) && ((b & 0b0100) != 0);
+                CONNECTS[(5 << 8) | (a << 4) | b] = ((a & 0b0001) != 0) && ((b & 0b0010) != 0);
+                CONNECTS[(3 << 8) | (a << 4) | b] = ((a & 0b0010) != 0) && ((b & 0b0001) != 0);
+            }
+        }
+    }
+
+    // All the pieces, in order.  Note that since they are expressed in binary, you can more easily modify them using the definition above.
+    private static final int[] ALL_PIECES = new int[] {
+            ((1 << 6) | 0b001100), ((7 << 6) | 0b001100), ((13 << 6) | 0b011110), ((19 << 6) | 0b011010), ((25 << 6) | 0b011100), ((31 << 6) | 0b011100),
+            ((2 << 6) | 0b111100), ((8 << 6) | 0b111100), ((14 << 6) | 0b100110), ((20<< 6) | 0b101010), ((26<< 6) | 0b101110), ((32<< 6) | 0b101100),
+            ((3 << 6) | 0b001110), ((9<< 6) | 0b001101), ((15<< 6) | 0b001110), ((21<< 6) | 0b001101), ((27<< 6) | 0b110000), ((33<< 6) | 0b110000),
+            ((4 << 6) | 0b001100), ((10<< 6) | 0b001100), ((16<< 6) | 0b010000), ((22<< 6) | 0b001000), ((28<< 6) | 0b110100), ((34<< 6) | 0b111000),
+            ((5 << 6) | 0b111100), ((11<< 6) | 0b111100), ((17<< 6) | 0b100110), ((23<< 6) | 0b101000), ((29<< 6) | 0b110100), ((35<< 6) | 0b111000),
+            ((6 << 6) | 0b110010), ((12<< 6) | 0b110001), ((18<< 6) | 0b110010), ((24<< 6) | 0b110001), ((30<< 6) | 0b110000), ((36<< 6) | 0b110000)
+    };
+
+    public static void shuffleArray(int[] ar, WoodsyRandom rnd) {
         // Fisher-Yates shuffle as shown in Stack Overflow: https://stackoverflow.com/questions/1519736/random-shuffling-of-an-array
-        Random rnd = new Random();
         for (int i = ar.length - 1; i > 0; i--)
         {
             int index = rnd.nextInt(i + 1);
@@ -42,22 +88,41 @@ public class Pieces {
         }
     }
 
+    public static void shuffleArray(int[] ar) {
+        Pieces.shuffleArray(ar, new WoodsyRandom(Pieces.newSeed()));
+    }
+
+    public static long newSeed() {
+        // A seed for a new game's bag.  Everything random about a game comes from its seed, so
+        // keeping the seed is enough to play the same game again.
+        return new Random().nextLong();
+    }
+
+    public static int[] pieces(long seed) {
+        // Returns the list of all pieces, shuffled.  The same seed always gives the same order.
+        return Pieces.pieces(ALL_PIECES, seed);
+    }
+
+    public static int[] pieces(int[] mix, long seed) {
+        // Returns the pieces in mix, shuffled the same way, for trying out other tile mixes.
+        int[] pieceArray = mix.clone();
+        Pieces.shuffleArray(pieceArray, new WoodsyRandom(seed));
+        return pieceArray;
+    }
+
+    public static int[] allPieces() {
+        // Returns the list of all pieces, in order.
+        return ALL_PIECES.clone();
+    }
+
     public static int[] pieces() {
         // Returns the list of all pieces.
         // The pieces are shuffled randomly before being returned.
-        // Note that since they are expressed in binary, you can more easily modify them using the definition above.
-        int[] pieceArray = new int[] {
-                ((1 << 6) | 0b001100), ((7 << 6) | 0b001100), ((13 << 6) | 0b011110), ((19 << 6) | 0b011010), ((25 << 6) | 0b011100), ((31 << 6) | 0b011100),
-                ((2 << 6) | 0b111100), ((8 << 6) | 0b111100), ((14 << 6) | 0b100110), ((20<< 6) | 0b101010), ((26<< 6) | 0b101110), ((32<< 6) | 0b101100),
-                ((3 << 6) | 0b001110), ((9<< 6) | 0b001101), ((15<< 6) | 0b001110), ((21<< 6) | 0b001101), ((27<< 6) | 0b110000), ((33<< 6) | 0b110000),
-                ((4 << 6) | 0b001100), ((10<< 6) | 0b001100), ((16<< 6) | 0b010000), ((22<< 6) | 0b001000), ((28<< 6) | 0b110100), ((34<< 6) | 0b111000),
-                ((5 << 6) | 0b111100), ((11<< 6) | 0b111100), ((17<< 6) | 0b100110), ((23<< 6) | 0b101000), ((29<< 6) | 0b110100), ((35<< 6) | 0b111000),
-                ((6 << 6) | 0b110010), ((12<< 6) | 0b110001), ((18<< 6) | 0b110010), ((24<< 6) | 0b110001), ((30<< 6) | 0b110000), ((36<< 6) | 0b110000)
-        };
-        Pieces.shuffleArray(pieceArray);
-        return pieceArray;
+        return Pieces.pieces(Pieces.newSeed());
     }
 
+    public static int numberOfPieces() { return ALL_PIECES.length; }
+
     // Number of people and house pairs in the game
     public static int numberOfPeople() { return 4; }
 
@@ -72,40 +137,44 @@ public class Pieces {
     public static int personNumber(int p) { return ((p >> 12) & 0b111); }
     public static int houseNumber(int p) { return ((p >> 15) & 0b111); }
     public static boolean isHouse(int p) {      // true if the piece is JUST a house piece (all the rest zero)
-        return ((p & 0b000111111111111111) == 0) && Pieces.houseNumber(p) > 0;
+        return ((p & 0b000111111111111111) == 0) && ((p & 0b111000000000000000) != 0);
     }
     public static boolean isPerson(int p) {     // true if the piece is JUST a person piece (all the rest zero)
-        return ((p & 0b111000111111111111) == 0) && Pieces.personNumber(p) > 0;
+        return ((p & 0b111000111111111111) == 0) && ((p & 0b000111000000000000) != 0);
     }
     public static boolean isPersonAndHouse(int p) {     // true if the piece is a person AND house
         return ((p & 0b000000111111111111) == 0);
     }
     public static boolean isTile(int p) {       // true if the piece is any other piece but a plain person or house piece
-        return ((!Pieces.isHouse(p)) && (!Pieces.isPerson(p)) && (!Pieces.isPersonAndHouse(p)));
+        // (not a house, person, or person-and-house all come down to the low 12 bits being nonzero)
+        return ((p & 0b000000111111111111) != 0);
     }
     public static boolean isBlank(int p) { return (p==0); }
     public static boolean isEndOfTurn(int p) { return (Pieces.pieceNumber(p)==63); }
     public static int numberMoves(int p) {
         // Returns the number of moves you can make of a person piece by discarding this piece.
-        return ((Pieces.up(p)? 1 : 0) + (Pieces.down(p)? 1: 0) + (Pieces.left(p)? 1: 0)
-            + (Pieces.right(p)? 1: 0));
+        return (ATTRIBUTES[p & 0xFFF] >> 6) & 0b111;
+    }
+    public static int directions(int p) {
+        // Returns the direction mask: up, down, left, right = 8, 4, 2, 1.
+        return ATTRIBUTES[p & 0xFFF] & 0b1111;
+    }
+    public static int coins(int p) {
+        // Returns the coin mask: silver, gold = 2, 1.
+        return (ATTRIBUTES[p & 0xFFF] >> 4) & 0b11;
     }
 
     public static boolean piecesConnect(int a, int b, int ax, int ay, int bx, int by) {
         // Returns true if the given pieces, with the given coordinates (in any arbitrary grid)
         // have connected paths.  In that case, it is permissible to move a person to that square.
-        // First, are the pieces adjacent?
-        if (Math.abs(ax-bx) > 1) return false;
-        if (Math.abs(ay-by) > 1) return false;
-        // Are they on the same square?
-        if (ax==bx && ay==by) return false;
-        // We know the pieces are adjacent, so check the path lines.
-        if (ax==bx && ay<by && Pieces.down(a) && Pieces.up(b)) return true;
-        if (ax==bx && ay>by && Pieces.up(a) && Pieces.down(b)) return true;
-        if (ay==by && ax<bx && Pieces.right(a) && Pieces.left(b)) return true;
-        if (ay==by && ax>bx && Pieces.left(a) && Pieces.right(b)) return true;
-        // Diagonals, etc. -- Not connected.
-        return false;
+        return Pieces.piecesConnect(a, b, bx - ax, by - ay);
+    }
+
+    public static boolean piecesConnect(int a, int b, int dx, int dy) {
+        // Same as above, where piece b is at (dx,dy) relative to piece a.
+        // Pieces that aren't adjacent, or are diagonal, or are the same square, never connect.
+        if (dx < -1 || dx > 1 || dy < -1 || dy > 1) return false;
+        return CONNECTS[(((dy + 1) * 3 + dx + 1) << 8) | (((a >> 2) & 0b1111) << 4) | ((b >> 2) & 0b1111)];
     }
 
     public static int setDirections(int p, boolean up, boolean down, boolean left, boolean right) {
@@ -144,18 +213,10 @@ public class Pieces {
 
 
     public static int createBlankPiece() { return 0; }
-    public static int createEndOfTurnPiece() {
-        return Pieces.createPiece(false,false,false,false,false,false,63,0,0);
-    }
-    public static int createSuccessPiece() {
-        return Pieces.createPiece(false,false,false,false,false,false,62,0,0);
-    }
-    public static int createFailurePiece() {
-        return Pieces.createPiece(false,false,false,false,false,false,61,0,0);
-    }
-    public static int createGreenGrassPiece() {
-        return Pieces.createPiece(false,false,false,false,false,false,60,0,0);
-    }
+    public static int createEndOfTurnPiece() { return END_OF_TURN_PIECE; }
+    public static int createSuccessPiece() { return SUCCESS_PIECE; }
+    public static int createFailurePiece() { return FAILURE_PIECE; }
+    public static int createGreenGrassPiece() { return GREEN_GRASS_PIECE; }
     public static int getPersonPieceFrom(int p) {
         // given a piece with a person on it, get the corresponding person piece.
         // Returns the failure piece if no person is on it.
@@ -168,10 +229,10 @@ public class Pieces {
         if (Pieces.houseNumber(p) == 0) return createFailurePiece();
         return createHousePiece(Pieces.houseNumber(p));
     }
-    public static boolean isEndOfTurnPiece(int p) { return p == Pieces.createEndOfTurnPiece(); }
-    public static boolean isSuccessPiece(int p) { return p == Pieces.createSuccessPiece(); }
-    public static boolean isFailurePiece(int p) { return p == Pieces.createFailurePiece(); }
-    public static boolean isGreenGrassPiece(int p) { return p == Pieces.createGreenGrassPiece(); }
+    public static boolean isEndOfTurnPiece(int p) { return p == END_OF_TURN_PIECE; }
+    public static boolean isSuccessPiece(int p) { return p == SUCCESS_PIECE; }
+    public static boolean isFailurePiece(int p) { return p == FAILURE_PIECE; }
+    public static boolean isGreenGrassPiece(int p) { return p == GREEN_GRASS_PIECE; }
 
     // Methods for modifying a piece
     public static int takeCoins(int p) {
@@ -0,0 +1,290 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//
+//  WoodsyAI: a computer opponent that plays a whole turn of a WoodsyGameData.
+//
+//  It plays one move at a time.  For each move it lists everything it could do with the
+//  current piece (every legal cell, discarding it, or for a walking person every step or
+//  stopping), and for each of those it plays lots of random games to the end of its pieces
+//  (Monte Carlo playouts) on forks of the game.  The move with the best average final score
+//  wins.  The playouts for different moves run in parallel on a fork-join pool, so it uses
+//  every core.
+//
+//  Every player gets the same tiles in the same order, so the tiles still in the AI's bag are
+//  exactly what it will get, and nobody else's moves change its board.  Two things are shared,
+//  though: persons and houses come from one pile, so the other players take some of them, and
+//  a person's goal points go down whenever anyone gets that person home.  So a playout plays
+//  the other players' turns too (at random, like the AI's own), in turn order between the AI's.
+//
+//  Thinking is limited by a time budget per turn, and optionally by a number of playouts per
+//  move.  playoutsPerSecond tells you how fast the last turn went.
+//
+//  With an opening book set, the first person and house pieces are put where the book says,
+//  with no thinking at all; everything the book doesn't know is searched as usual.
+//
+
+public class WoodsyAI {
+    // Actions, besides playing on cell 0..CELLS-1.
+    public static final int DISCARD = WoodsyGameData.MOVE_DISCARD;  // discard the current piece
+    public static final int STOP = WoodsyBoardData.CELLS + 1;       // stop walking and end the turn
+    private static final int MAX_ACTIONS = WoodsyBoardData.CELLS + 2;
+
+    private ForkJoinPool pool;
+    private WoodsyRandom random;
+    private long timeBudgetMillis = 1000;   // thinking time for a whole turn
+    private int playoutBudget = 0;          // playouts per candidate move, or 0 for as many as time allows
+    private int maxPlayoutTurns = 200;      // safety limit on the length of one playout
+    private long lastPlayouts = 0;
+    private long lastNanos = 0;
+    private WoodsyOpeningBook openingBook = null;
+
+    public WoodsyAI() {
+        this(Runtime.getRuntime().availableProcessors(), System.nanoTime());
+    }
+
+    public WoodsyAI(int threads, long seed) {
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        this.random = new WoodsyRandom(seed);
+    }
+
+    public void shutdown() {
+        // stops the worker threads; the AI can't be used afterwards.
+        this.pool.shutdown();
+    }
+
+    //-- Settings
+    public void setTimeBudget(long millis) { this.timeBudgetMillis = millis; }
+    public void setPlayoutBudget(int playoutsPerMove) { this.playoutBudget = playoutsPerMove; }
+    public void setMaxPlayoutTurns(int turns) { this.maxPlayoutTurns = turns; }
+    public void setOpeningBook(WoodsyOpeningBook book) { this.openingBook = book; }
+
+    //-- Statistics for the last turn played
+    public long lastPlayouts() { return this.lastPlayouts; }
+    public double playoutsPerSecond() {
+        if (this.lastNanos <= 0) return 0;
+        return this.lastPlayouts * 1e9 / this.lastNanos;
+    }
+
+    public int playTurn(WoodsyGameData game, String participantId) {
+        // Plays a whole turn for participantId: begins the turn, makes moves until the turn is
+        // done, and ends it.  Returns the number of moves made.
+        long start = System.nanoTime();
+        long deadline = start + this.timeBudgetMillis * 1000000L;
+        this.lastPlayouts = 0;
+        game.beginTurn(participantId);
+        int moves = 0;
+        int[] actions = new int[MAX_ACTIONS];
+        while (true) {
+            int n = WoodsyAI.listActions(game, actions);
+            if (n == 0) break;
+            // share the time left between this move and the ones likely to follow it.
+            int movesAhead = game.movingPerson() ? game.movingPersonMovesLeft() + 1 : 2;
+            long moveDeadline = System.nanoTime() + (deadline - System.nanoTime()) / movesAhead;
+            int action = (n == 1) ? actions[0] : this.bookAction(game);
+            if (action < 0) action = this.search(game, participantId, actions, n, moveDeadline);
+            if (action == STOP || !WoodsyAI.applyAction(game, action)) break;
+            moves++;
+        }
+        game.endTurn();
+        this.lastNanos = System.nanoTime() - start;
+        return moves;
+    }
+
+    public int chooseAction(WoodsyGameData game, String participantId, long millis) {
+        // Picks the best next move for a turn already in progress, without making it.
+        // Returns a cell index, DISCARD or STOP, or -1 if there is nothing to do.
+        int[] actions = new int[MAX_ACTIONS];
+        int n = WoodsyAI.listActions(game, actions);
+        if (n == 0) return -1;
+        if (n == 1) return actions[0];
+        int book = this.bookAction(game);
+        if (book >= 0) return book;
+        long start = System.nanoTime();
+        this.lastPlayouts = 0;
+        int action = this.search(game, participantId, actions, n, start + millis * 1000000L);
+        this.lastNanos = System.nanoTime() - start;
+        return action;
+    }
+
+    private int bookAction(WoodsyGameData game) {
+        // the opening book's cell for the piece to play, or -1 if there's no book or it doesn't know.
+        if (this.openingBook == null || game.movingPerson() || !game.piecesLeftThisTurn()) return -1;
+        return this.openingBook.suggest(game.getCurrentBoard(), game.getNextPiece());
+    }
+
+    //-- Moves
+    static int listActions(WoodsyGameData game, int[] actions) {
+        // Fills actions with every move that can be made right now; returns how many.
+        int n = 0;
+        if (game.movingPerson()) {
+            if (game.movingPersonMovesLeft() <= 0) return 0;
+            long steps = game.legalMoves(game.getNextPiece());
+            while (steps != 0) {
+                actions[n++] = Long.numberOfTrailingZeros(steps);
+                steps &= steps - 1;
+            }
+            if (n > 0) actions[n++] = STOP;
+            return n;
+        }
+        if (!game.piecesLeftThisTurn()) return 0;
+        int p = game.getNextPiece();
+        long cells = game.legalMoves(p);
+        while (cells != 0) {
+            actions[n++] = Long.numberOfTrailingZeros(cells);
+            cells &= cells - 1;
+        }
+        if (WoodsyRules.checkDiscard(p, false) == WoodsyRules.OK) actions[n++] = DISCARD;
+        return n;
+    }
+
+    static boolean applyAction(WoodsyGameData game, int action) {
+        // Makes a move; returns false if it was refused.
+        if (action == STOP) return false;
+        int p = game.getNextPiece();
+        int result;
+        if (action == DISCARD) result = game.playPieceDiscard(p);
+        else result = game.playPieceAt(p, WoodsyBoardData.xOf(action), WoodsyBoardData.yOf(action));
+        return !Pieces.isFailurePiece(result);
+    }
+
+    static boolean playRandomMove(WoodsyGameData game, WoodsyRandom rnd) {
+        // The playout policy: makes one random legal move.  Returns false when the turn is over.
+        int p = game.getNextPiece();
+        if (game.movingPerson()) {
+            if (game.movingPersonMovesLeft() <= 0) return false;
+            int step = rnd.nextBit(game.legalMoves(p));
+            if (step < 0) return false;
+            return !Pieces.isFailurePiece(game.playPieceAt(p, WoodsyBoardData.xOf(step), WoodsyBoardData.yOf(step)));
+        }
+        if (!game.piecesLeftThisTurn()) return false;
+        long cells = game.legalMoves(p);
+        boolean canDiscard = Pieces.isTile(p);
+        // discarding is one more choice alongside the legal cells
+        if (canDiscard && (cells == 0 || rnd.nextInt(Long.bitCount(cells) + 1) == 0))
+            return !Pieces.isFailurePiece(game.playPieceDiscard(p));
+        int cell = rnd.nextBit(cells);
+        if (cell < 0) return false;
+        return !Pieces.isFailurePiece(game.playPieceAt(p, WoodsyBoardData.xOf(cell), WoodsyBoardData.yOf(cell)));
+    }
+
+    static int playout(WoodsyGameData game, String participantId, WoodsyRandom rnd, int maxTurns, boolean turnInProgress) {
+        // Plays the rest of this turn (if there is one in progress), and the rest of the game
+        // after it, at random, and returns the participant's final score.  The game passed in is
+        // changed, so hand it a fork.
+        int guard = 0;
+        if (turnInProgress) {
+            while (guard++ < 64 && WoodsyAI.playRandomMove(game, rnd)) { }
+            game.endTurn();
+            WoodsyAI.playOthers(game, participantId, rnd);
+        }
+        for (int turn = 0; turn < maxTurns && !game.gameOver(); turn++) {
+            game.beginTurn(participantId);
+            if (!game.piecesLeftThisTurn()) break;
+            guard = 0;
+            while (guard++ < 64 && WoodsyAI.playRandomMove(game, rnd)) { }
+            game.endTurn();
+            WoodsyAI.playOthers(game, participantId, rnd);
+        }
+        return game.getScore(participantId);
+    }
+
+    private static void playOthers(WoodsyGameData game, String participantId, WoodsyRandom rnd) {
+        // Plays a random turn for each of the other participants, in turn order, up to
+        // participantId's next turn: they take their persons and houses from the shared pile,
+        // and can get people home first.
+        String other = game.getNextParticipantId(participantId);
+        while (other != null && !other.equals(participantId) && !game.gameOver()) {
+            game.beginTurn(other);
+            int guard = 0;
+            while (guard++ < 64 && WoodsyAI.playRandomMove(game, rnd)) { }
+            game.endTurn();
+            other = game.getNextParticipantId(other);
+        }
+    }
+
+    //-- Searching
+    private int search(WoodsyGameData game, String participantId, int[] actions, int n, long deadline) {
+        // Runs playouts for each of the n actions until the deadline (or playout budget) and
+        // returns the action with the best average score.
+        WoodsyGameData[] starts = new WoodsyGameData[n];
+        WoodsyRandom[] streams = new WoodsyRandom[n];
+        long[] totals = new long[n];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            // each action gets its own fork to play out from, and its own random numbers.
+            starts[i] = game.fork();
+            if (actions[i] == STOP) starts[i].endTurn();
+            else if (!WoodsyAI.applyAction(starts[i], actions[i])) starts[i] = null;
+            streams[i] = this.random.split();
+        }
+        this.pool.invoke(new PlayoutTask(participantId, starts, actions, streams, totals, counts, 0, n, deadline,
+                this.playoutBudget, this.maxPlayoutTurns));
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            this.lastPlayouts += counts[i];
+            if (counts[i] == 0) continue;
+            double average = (double) totals[i] / counts[i];
+            if (average > bestScore) { bestScore = average; best = i; }
+        }
+        return (best < 0) ? actions[0] : actions[best];
+    }
+
+    //
+    //  Runs the playouts for a range of actions, splitting the range in half until each task
+    //  has a single action.  Each action's totals are only ever touched by the one task that
+    //  owns it, so no locking is needed.
+    //
+    private static class PlayoutTask extends RecursiveAction {
+        static final long serialVersionUID = 1L;
+
+        private String participantId;
+        private WoodsyGameData[] starts;
+        private int[] actions;
+        private WoodsyRandom[] streams;
+        private long[] totals;
+        private int[] counts;
+        private int lo, hi;
+        private long deadline;
+        private int budget;
+        private int maxTurns;
+
+        PlayoutTask(String participantId, WoodsyGameData[] starts, int[] actions, WoodsyRandom[] streams, long[] totals,
+                    int[] counts, int lo, int hi, long deadline, int budget, int maxTurns) {
+            this.participantId = participantId;
+            this.starts = starts;
+            this.actions = actions;
+            this.streams = streams;
+            this.totals = totals;
+            this.counts = counts;
+            this.lo = lo;
+            this.hi = hi;
+            this.deadline = deadline;
+            this.budget = budget;
+            this.maxTurns = maxTurns;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.hi - this.lo > 1) {
+                int mid = (this.lo + this.hi) >>> 1;
+                RecursiveAction.invokeAll(
+                        new PlayoutTask(this.participantId, this.starts, this.actions, this.streams, this.totals, this.counts, this.lo, mid, this.deadline, this.budget, this.maxTurns),
+                        new PlayoutTask(this.participantId, this.starts, this.actions, this.streams, this.totals, this.counts, mid, this.hi, this.deadline, this.budget, this.maxTurns));
+                return;
+            }
+            int i = this.lo;
+            WoodsyGameData start = this.starts[i];
+            if (start == null) return;
+            boolean turnInProgress = (this.actions[i] != STOP);     // stopping ends the turn
+            // always get at least one playout, even if the deadline has already gone by.
+            do {
+                this.totals[i] += WoodsyAI.playout(start.fork(), this.participantId, this.streams[i], this.maxTurns, turnInProgress);
+                this.counts[i]++;
+            } while ((this.budget <= 0 || this.counts[i] < this.budget) && System.nanoTime() < this.deadline);
+        }
+    }
+}
@@ -2,42 +2,119 @@ package com.davewhitesoftware.woodsywalk;
 
 //  Object representing a game board for one player in Woodsy Walk.
 //  This is the internal data representation, NOT the UI view object-- that's WoodsyBoardView.
+//
+//  The board is stored as a flat array of pieces, one per cell, indexed row by row
+//  (index = y * WIDTH + x).  Alongside the cells we keep a set of bitplanes: one 64-bit long
+//  per feature, where bit N is set if cell N has that feature.  Because the board is 8 cells
+//  wide, moving a whole plane one cell right is a shift by 1 and one cell down is a shift by 8,
+//  so whole-board questions ("which cells have coins", "where do roads join up") are a few
+//  shifts and ANDs instead of a loop over every cell.
+//
+//  The planes are always kept in step with the cells by setCell, so callers never touch them
+//  directly except to read them.  Person and house positions come straight off their planes,
+//  and the set of colors whose person is standing on their own house is tracked as cells
+//  change, so locating pieces and checking for a win never scan the board.
+//
+//  Every board also keeps a 64-bit Zobrist hash of its cells (see WoodsyHash), updated by
+//  setCell, so two boards can be told apart, or looked up in a table, without comparing cells.
+//
+//  Boards are copy-on-write: copyFrom and snapshot don't copy anything, they just share the
+//  other board's arrays and mark both boards as shared.  The first setCell on a shared board
+//  gives it its own copy.  So copying a board that nobody then changes is free.
+//
+//  In the binary format (writeCells/readCells) a board is just its cells, three bytes each;
+//  the planes and hash are worked out again when it is read.
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 public class WoodsyBoardData implements Serializable {
-    static final long serialVersionUID = 1L;
-    private int[][] board;
-    private int height, width;
+    static final long serialVersionUID = 2L;
 
-    WoodsyBoardData() {
-        // board constructor: board starts out empty.
-        this.board = new int[7][8];  // rows first, then columns
-        this.height = 7;
-        this.width = 8;
+    //-- Board dimensions.  WIDTH must stay 8 so that a row is exactly one byte of a bitplane.
+    public static final int WIDTH = 8;
+    public static final int HEIGHT = 7;
+    public static final int CELLS = WIDTH * HEIGHT;
+
+    //-- Whole-board masks
+    public static final long BOARD_MASK = (1L << CELLS) - 1;
+    public static final long FIRST_COLUMN = 0x0001010101010101L;
+    public static final long LAST_COLUMN = FIRST_COLUMN << (WIDTH - 1);
+    public static final long FIRST_ROW = 0xFFL;
+    public static final long LAST_ROW = FIRST_ROW << (WIDTH * (HEIGHT - 1));
+    public static final long EDGE_MASK = FIRST_COLUMN | LAST_COLUMN | FIRST_ROW | LAST_ROW;
+    public static final long INTERIOR_MASK = BOARD_MASK & ~EDGE_MASK;
+
+    //-- Bitplane numbers.  Person and house planes are indexed by color: PERSON_PLANES + n.
+    static final int PLANE_UP = 0;
+    static final int PLANE_DOWN = 1;
+    static final int PLANE_LEFT = 2;
+    static final int PLANE_RIGHT = 3;
+    static final int PLANE_SILVER = 4;
+    static final int PLANE_GOLD = 5;
+    static final int PLANE_OCCUPIED = 6;    // any non-blank cell
+    static final int PLANE_GRASS = 7;       // plain green grass with nothing on it
+    static final int COLORS = 8;            // colors are 3 bits in a piece, 1..7 (0 is "none")
+    static final int PERSON_PLANES = 8;
+    static final int HOUSE_PLANES = PERSON_PLANES + COLORS;
+    static final int PLANES = HOUSE_PLANES + COLORS;
+
+    // The starting board is the same for everyone, so we build it once and copy it.
+    private static final int[] EMPTY_CELLS = new int[CELLS];
+    private static final long[] EMPTY_PLANES = new long[PLANES];
+    private static long EMPTY_HASH = 0;
+    static {
         // note: the edges have Green Grass pieces, showing where the people and houses go.
-        for (int i = 0; i < this.height; i++)
-            for (int j = 0; j < this.width; j++) {
-                if (i== 0 || j == 0 || i+1== this.height || j+1==this.width)
-                    this.board[i][j] = Pieces.createGreenGrassPiece();
-                else
-                    this.board[i][j] = Pieces.createBlankPiece();
-            }
+        for (int i = 0; i < CELLS; i++) {
+            if ((EDGE_MASK & (1L << i)) != 0) EMPTY_CELLS[i] = Pieces.createGreenGrassPiece();
+            WoodsyBoardData.addPlanes(EMPTY_PLANES, EMPTY_CELLS[i], 1L << i);
+            EMPTY_HASH ^= WoodsyHash.cell(i, EMPTY_CELLS[i]);
+        }
+    }
+
+    // Coordinates are immutable, so every lookup hands back one of these shared objects.
+    private static final Coordinates[] CELL_COORDINATES = new Coordinates[CELLS];
+    private static final Coordinates NOT_FOUND = new Coordinates(0,0,true);
+    static {
+        for (int i = 0; i < CELLS; i++) CELL_COORDINATES[i] = new Coordinates(xOf(i),yOf(i),false);
     }
+    // bit N is set for each color N from 1 to numberOfPeople, which all have to be home to win.
+    private static final int WINNING_COLORS = ((1 << (Pieces.numberOfPeople() + 1)) - 1) & ~1;
+
+    private int[] board;
+    private transient long[] planes;
+    private transient int matchedColors;    // bit N set when person N is on the same cell as house N
+    private transient boolean shared;       // true if board and planes may be in use by another board
+    private transient long hash;            // Zobrist hash of the cells
+
+    WoodsyBoardData() {
+        // board constructor: board starts out empty (sharing the starting board until it changes).
+        this.board = EMPTY_CELLS;
+        this.planes = EMPTY_PLANES;
+        this.shared = true;
+        this.hash = EMPTY_HASH;
+    }
+
+    //-- Converting between coordinates and cell indexes
+    public static int indexOf(int x, int y) { return y * WIDTH + x; }
+    public static int xOf(int index) { return index & (WIDTH - 1); }
+    public static int yOf(int index) { return index >>> 3; }
 
     //-- Getters and setters
-    public int getHeight() { return this.height; }
-    public int getWidth() { return this.width; }
+    public int getHeight() { return HEIGHT; }
+    public int getWidth() { return WIDTH; }
     public int getCell(int x, int y) {
-        if (x < 0 || x >= this.width) return 0;
-        if (y < 0 || y >= this.height) return 0;
-        return this.board[y][x];
+        if (x < 0 || x >= WIDTH) return 0;
+        if (y < 0 || y >= HEIGHT) return 0;
+        return this.board[y * WIDTH + x];
     }
     public void setCell(int x, int y, int p) {
-        if (x < 0 || x >= this.width) return;
-        if (y < 0 || y >= this.height) return;
-        this.board[y][x] = p;
+        if (x < 0 || x >= WIDTH) return;
+        if (y < 0 || y >= HEIGHT) return;
+        this.setCellAt(y * WIDTH + x, p);
     }
     public int getCell(Coordinates c) {
         if (c.notFound()) return Pieces.createFailurePiece();
@@ -47,35 +124,213 @@ public class WoodsyBoardData implements Serializable {
         if (c.notFound()) return;
         this.setCell(c.x(), c.y(),p);
     }
-    //-- Locate people and houses
+    public int getCellAt(int index) {
+        // get a cell by its index (see indexOf); no bounds checking.
+        return this.board[index];
+    }
+    public void setCellAt(int index, int p) {
+        // set a cell by its index (see indexOf) and bring the bitplanes up to date; no bounds checking.
+        int old = this.board[index];
+        if (old == p) return;
+        if (this.shared) this.unshare();
+        long bit = 1L << index;
+        WoodsyBoardData.removePlanes(this.planes, old, bit);
+        WoodsyBoardData.addPlanes(this.planes, p, bit);
+        this.board[index] = p;
+        this.hash ^= WoodsyHash.cell(index, old) ^ WoodsyHash.cell(index, p);
+        // only the colors on the old and new piece can have changed whether they are matched.
+        int colors = (1 << Pieces.personNumber(old)) | (1 << Pieces.houseNumber(old))
+                | (1 << Pieces.personNumber(p)) | (1 << Pieces.houseNumber(p));
+        this.updateMatched(colors & ~1);
+    }
+    private void updateMatched(int colors) {
+        // recompute the matched bit for each color set in colors.
+        while (colors != 0) {
+            int n = Integer.numberOfTrailingZeros(colors);
+            colors &= colors - 1;
+            int h = this.houseIndex(n);
+            if (h >= 0 && h == this.personIndex(n)) this.matchedColors |= (1 << n);
+            else this.matchedColors &= ~(1 << n);
+        }
+    }
+
+    private void unshare() {
+        // take a private copy of the arrays before changing them.
+        this.board = this.board.clone();
+        this.planes = this.planes.clone();
+        this.shared = false;
+    }
+
+    //-- Bitplane maintenance
+    private static void addPlanes(long[] planes, int p, long bit) {
+        // set the bit for every feature that piece p has.
+        if (p == 0) return;
+        if (Pieces.up(p)) planes[PLANE_UP] |= bit;
+        if (Pieces.down(p)) planes[PLANE_DOWN] |= bit;
+        if (Pieces.left(p)) planes[PLANE_LEFT] |= bit;
+        if (Pieces.right(p)) planes[PLANE_RIGHT] |= bit;
+        if (Pieces.silver(p)) planes[PLANE_SILVER] |= bit;
+        if (Pieces.gold(p)) planes[PLANE_GOLD] |= bit;
+        if (Pieces.isGreenGrassPiece(p)) planes[PLANE_GRASS] |= bit;
+        planes[PLANE_OCCUPIED] |= bit;
+        planes[PERSON_PLANES + Pieces.personNumber(p)] |= bit;
+        planes[HOUSE_PLANES + Pieces.houseNumber(p)] |= bit;
+    }
+    private static void removePlanes(long[] planes, int p, long bit) {
+        // clear the bit in every plane piece p could have set.
+        if (p == 0) return;
+        long keep = ~bit;
+        for (int i = PLANE_UP; i <= PLANE_GRASS; i++) planes[i] &= keep;
+        planes[PERSON_PLANES + Pieces.personNumber(p)] &= keep;
+        planes[HOUSE_PLANES + Pieces.houseNumber(p)] &= keep;
+    }
+    private void rebuildPlanes() {
+        // recompute every plane from the cells, e.g. after deserializing.
+        this.planes = new long[PLANES];
+        this.hash = 0;
+        for (int i = 0; i < CELLS; i++) {
+            WoodsyBoardData.addPlanes(this.planes, this.board[i], 1L << i);
+            this.hash ^= WoodsyHash.cell(i, this.board[i]);
+        }
+        this.matchedColors = 0;
+        this.updateMatched(0xFE);
+    }
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        // the planes are derived data, so they aren't serialized; rebuild them on the way in.
+        // (boards that shared cells when written come back sharing one array, so take a copy.)
+        in.defaultReadObject();
+        this.board = this.board.clone();
+        this.shared = false;
+        this.rebuildPlanes();
+    }
+
+    //-- Binary format (see WoodsyCodec): every cell, fixed width, in index order
+    void writeCells(ByteBuffer out) {
+        for (int i = 0; i < CELLS; i++) WoodsyCodec.putCell(out, this.board[i]);
+    }
+    void readCells(ByteBuffer in) {
+        int[] cells = new int[CELLS];
+        for (int i = 0; i < CELLS; i++) cells[i] = WoodsyCodec.getCell(in);
+        this.board = cells;
+        this.shared = false;
+        this.rebuildPlanes();
+    }
+
+    //-- Whole-board bitplane queries.  Bit N of the result refers to cell N.
+    public long hash() {
+        // the Zobrist hash of the board: equal boards always have equal hashes.
+        return this.hash;
+    }
+
+    public boolean sameCells(WoodsyBoardData b) {
+        // true if both boards have exactly the same pieces; almost always settled by the hashes.
+        if (this.hash != b.hash) return false;
+        if (this.board == b.board) return true;
+        for (int i = 0; i < CELLS; i++) if (this.board[i] != b.board[i]) return false;
+        return true;
+    }
+
+    public long roadsUp() { return this.planes[PLANE_UP]; }
+    public long roadsDown() { return this.planes[PLANE_DOWN]; }
+    public long roadsLeft() { return this.planes[PLANE_LEFT]; }
+    public long roadsRight() { return this.planes[PLANE_RIGHT]; }
+    public long silverCoins() { return this.planes[PLANE_SILVER]; }
+    public long goldCoins() { return this.planes[PLANE_GOLD]; }
+    public long coins() { return this.planes[PLANE_SILVER] | this.planes[PLANE_GOLD]; }
+    public long occupied() { return this.planes[PLANE_OCCUPIED]; }
+    public long blank() { return BOARD_MASK & ~this.planes[PLANE_OCCUPIED]; }
+    public long greenGrass() { return this.planes[PLANE_GRASS]; }
+    public long persons(int personNumber) { return this.planes[PERSON_PLANES + (personNumber & 7)]; }
+    public long houses(int houseNumber) { return this.planes[HOUSE_PLANES + (houseNumber & 7)]; }
+    public long anyPerson() {
+        long m = 0;
+        for (int i = 1; i < COLORS; i++) m |= this.planes[PERSON_PLANES + i];
+        return m;
+    }
+    public long anyHouse() {
+        long m = 0;
+        for (int i = 1; i < COLORS; i++) m |= this.planes[HOUSE_PLANES + i];
+        return m;
+    }
+    //  A person or house on the edge sits on green grass, which has no roads of its own, but it
+    //  joins the board the way its goal piece would (see createGoalPiece): by a road pointing
+    //  inward.  The joins below count those edge roads so people can walk on and off the edge.
+    private long edgeAnchors() {
+        return (this.anyPerson() | this.anyHouse()) & EDGE_MASK;
+    }
+    public long joinsRight() {
+        // cells whose road continues into the cell to their right.
+        long anchors = this.edgeAnchors();
+        long right = this.planes[PLANE_RIGHT] | (anchors & FIRST_COLUMN);
+        long left = this.planes[PLANE_LEFT] | (anchors & LAST_COLUMN);
+        return right & (left >>> 1) & ~LAST_COLUMN;
+    }
+    public long joinsDown() {
+        // cells whose road continues into the cell below them.
+        long anchors = this.edgeAnchors();
+        long down = this.planes[PLANE_DOWN] | (anchors & FIRST_ROW);
+        long up = this.planes[PLANE_UP] | (anchors & LAST_ROW);
+        return down & (up >>> WIDTH);
+    }
+    public boolean connects(int from, int to) {
+        // true if cells from and to are side by side with a road running between them.
+        if (to == from + 1) return (this.joinsRight() & (1L << from)) != 0;
+        if (to == from - 1) return (this.joinsRight() & (1L << to)) != 0;
+        if (to == from + WIDTH) return (this.joinsDown() & (1L << from)) != 0;
+        if (to == from - WIDTH) return (this.joinsDown() & (1L << to)) != 0;
+        return false;
+    }
+
+    //-- Moving a whole plane one cell in a direction (bits that fall off the board are dropped)
+    public static long shiftUp(long m) { return m >>> WIDTH; }
+    public static long shiftDown(long m) { return (m << WIDTH) & BOARD_MASK; }
+    public static long shiftLeft(long m) { return (m & ~FIRST_COLUMN) >>> 1; }
+    public static long shiftRight(long m) { return (m & ~LAST_COLUMN) << 1; }
+    public static long neighbors(long m) {
+        return WoodsyBoardData.shiftUp(m) | WoodsyBoardData.shiftDown(m)
+                | WoodsyBoardData.shiftLeft(m) | WoodsyBoardData.shiftRight(m);
+    }
+
+    //-- Locate people and houses.  If a color is on the board more than once, the first one in
+    //   row order wins, which is the lowest bit of its plane.
+    public int personIndex(int personNumber) {
+        // returns the cell index of the person, or -1 if not on the board.
+        if (personNumber <= 0 || personNumber >= COLORS) return -1;
+        long m = this.planes[PERSON_PLANES + personNumber];
+        return (m == 0) ? -1 : Long.numberOfTrailingZeros(m);
+    }
+    public int houseIndex(int houseNumber) {
+        // returns the cell index of the house, or -1 if not on the board.
+        if (houseNumber <= 0 || houseNumber >= COLORS) return -1;
+        long m = this.planes[HOUSE_PLANES + houseNumber];
+        return (m == 0) ? -1 : Long.numberOfTrailingZeros(m);
+    }
+    public static Coordinates coordinatesOf(int index) {
+        // shared Coordinates for a cell index; -1 (or any bad index) gives a Not Found result.
+        if (index < 0 || index >= CELLS) return NOT_FOUND;
+        return CELL_COORDINATES[index];
+    }
     public Coordinates locatePerson(int personNumber) {
-        for (int i = 0; i < this.height; i++)
-            for (int j = 0; j < this.width; j++) {
-                if (Pieces.personNumber(this.board[i][j]) == personNumber) return new Coordinates(j,i,false);
-            }
-        return new Coordinates(0,0,true);
+        return WoodsyBoardData.coordinatesOf(this.personIndex(personNumber));
     }
     public Coordinates locateHouse(int houseNumber) {
-        for (int i = 0; i < this.height; i++)
-            for (int j = 0; j < this.width; j++) {
-                if (Pieces.houseNumber(this.board[i][j]) == houseNumber) return new Coordinates(j,i,false);
-            }
-        return new Coordinates(0,0,true);
+        return WoodsyBoardData.coordinatesOf(this.houseIndex(houseNumber));
     }
     //-- Evaluate coordinates
     public boolean isValidCoords(Coordinates a) {
         // return true for valid coordinates
         if (a.x() < 0 || a.y() < 0) return false;
-        if (a.x() >= this.width) return false;
-        if (a.y() >= this.height) return false;
+        if (a.x() >= WIDTH) return false;
+        if (a.y() >= HEIGHT) return false;
         return true;
     }
     public boolean isOnEdge(Coordinates a) {
         // return true for coordinates on the edge of the board (where only people and houses go)
         if (!isValidCoords(a)) return false;
-        if (a.x() == 0 || a.x() == this.width - 1) return true;
-        if (a.y() == 0 || a.y() == this.height - 1) return true;
-        return false;
+        return WoodsyBoardData.isEdgeIndex(indexOf(a.x(), a.y()));
+    }
+    public static boolean isEdgeIndex(int index) {
+        return (EDGE_MASK & (1L << index)) != 0;
     }
     //-- Compute distance
     public int distance(Coordinates a, Coordinates b) {
@@ -84,14 +339,24 @@ public class WoodsyBoardData implements Serializable {
         if (a.notFound() || b.notFound()) return Integer.MAX_VALUE;
         return Math.abs(a.x()-b.x()) + Math.abs(a.y()-b.y());
     }
+    public static int distance(int a, int b) {
+        // Same as above for cell indexes, where -1 is Not Found.
+        if (a < 0 || b < 0) return Integer.MAX_VALUE;
+        return Math.abs(xOf(a)-xOf(b)) + Math.abs(yOf(a)-yOf(b));
+    }
     public int distanceToPartner(int p, Coordinates c) {
         // Given a person or house piece, and proposed coordinates for placing it, compute
         // the distance to its corresponding partner.  Returns Integer.MAX_VALUE if the
         // partner is not found or the input is not a pure person/house piece.
+        if (c.notFound()) return Integer.MAX_VALUE;
+        return this.distanceToPartner(p, indexOf(c.x(), c.y()));
+    }
+    public int distanceToPartner(int p, int index) {
+        // Same as above for a cell index.
         if (Pieces.isPerson(p))
-            return this.distance(this.locateHouse(Pieces.personNumber(p)), c);
+            return WoodsyBoardData.distance(this.houseIndex(Pieces.personNumber(p)), index);
         else if (Pieces.isHouse(p))
-            return this.distance(this.locatePerson(Pieces.houseNumber(p)), c);
+            return WoodsyBoardData.distance(this.personIndex(Pieces.houseNumber(p)), index);
         else
             return Integer.MAX_VALUE;
     }
@@ -101,28 +366,32 @@ public class WoodsyBoardData implements Serializable {
         int p = Pieces.createGreenGrassPiece();
         p = Pieces.setHouseNumber(p,houseNumber);
         p = Pieces.setPersonNumber(p,personNumber);
-        p = Pieces.setDirections(p, (c.y()==this.height-1), (c.y()==0), (c.x()==this.width-1), (c.x()==0));
+        p = Pieces.setDirections(p, (c.y()==HEIGHT-1), (c.y()==0), (c.x()==WIDTH-1), (c.x()==0));
         return p;
     }
     //-- Determining if a board is a winning board
     public boolean isWinningBoard() {
-        for (int i = 1; i <= Pieces.numberOfPeople(); i++) {
-            Coordinates ch = this.locateHouse(i);
-            Coordinates cp = this.locatePerson(i);
-            if (!ch.notFound() && !cp.notFound()) {
-                if (!ch.equals(cp)) return false;
-            } else
-                return false;
-        }
-        return true;
+        return (this.matchedColors & WINNING_COLORS) == WINNING_COLORS;
     }
-    //-- Copy a board
+    public int matchedPairs() {
+        // number of people currently standing on their own house.
+        return Integer.bitCount(this.matchedColors);
+    }
+    //-- Copy a board (copy-on-write: both boards share the cells until one of them changes)
     public void copyFrom(WoodsyBoardData b) {
-        for (int i = 0; i < b.height; i++) {
-            for (int j = 0; j < b.width; j++) {
-                this.setCell(i,j,b.board[i][j]);
-            }
-        }
+        if (b == this) return;
+        this.board = b.board;
+        this.planes = b.planes;
+        this.matchedColors = b.matchedColors;
+        this.hash = b.hash;
+        this.shared = true;
+        b.shared = true;
+    }
+    public WoodsyBoardData snapshot() {
+        // returns a copy of this board that costs nothing until one of the two is changed.
+        WoodsyBoardData copy = new WoodsyBoardData();
+        copy.copyFrom(this);
+        return copy;
     }
 
 }
@@ -0,0 +1,137 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+//
+//  WoodsyCodec: An object with only static methods (so don't instantiate it, no need)
+//  with the building blocks of the game's compact binary format.  WoodsyGameData.writeTo and
+//  readFrom lay out a whole game with these; see there for the order of the fields.
+//
+//  Numbers are varints: 7 bits per byte, low bits first, with the top bit set on every byte
+//  but the last, so small numbers (piece numbers, scores, list lengths) take one or two bytes.
+//  Board cells are fixed width, CELL_BYTES each, since a cell is always an 18-bit piece.
+//  Strings are a varint length and then each char as a varint, which is one byte per char for
+//  the ASCII participant ids and needs no encoder or temporary arrays.
+//
+//  Everything reads and writes a caller's ByteBuffer and nothing else, so a buffer can be kept
+//  and reused for every game.  Running out of buffer throws the usual BufferOverflowException
+//  or BufferUnderflowException.
+//
+
+public class WoodsyCodec {
+    public static final int CELL_BYTES = 3;
+
+    //-- Varints
+    public static void putVarint(ByteBuffer out, int v) {
+        // v is treated as unsigned; negative numbers take five bytes.
+        while ((v & ~0x7F) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    public static int getVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    public static void putSignedVarint(ByteBuffer out, int v) {
+        // zigzag: 0, -1, 1, -2, 2... become 0, 1, 2, 3, 4..., so small negative numbers stay small.
+        WoodsyCodec.putVarint(out, (v << 1) ^ (v >> 31));
+    }
+
+    public static int getSignedVarint(ByteBuffer in) {
+        int v = WoodsyCodec.getVarint(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public static int varintSize(int v) {
+        // how many bytes putVarint will write for v.
+        int n = 1;
+        while ((v & ~0x7F) != 0) { n++; v >>>= 7; }
+        return n;
+    }
+
+    //-- Cells
+    public static void putCell(ByteBuffer out, int p) {
+        out.put((byte) (p >>> 16));
+        out.put((byte) (p >>> 8));
+        out.put((byte) p);
+    }
+
+    public static int getCell(ByteBuffer in) {
+        return ((in.get() & 0xFF) << 16) | ((in.get() & 0xFF) << 8) | (in.get() & 0xFF);
+    }
+
+    //-- Strings
+    public static void putString(ByteBuffer out, String s) {
+        int n = s.length();
+        WoodsyCodec.putVarint(out, n);
+        for (int i = 0; i < n; i++) WoodsyCodec.putVarint(out, s.charAt(i));
+    }
+
+    public static String getString(ByteBuffer in) {
+        int n = WoodsyCodec.getVarint(in);
+        if (n < 0 || n > in.remaining()) throw new IllegalArgumentException("bad string length " + n);
+        StringBuilder s = new StringBuilder(n);
+        for (int i = 0; i < n; i++) s.append((char) WoodsyCodec.getVarint(in));
+        return s.toString();
+    }
+
+    public static int stringSize(String s) {
+        int size = WoodsyCodec.varintSize(s.length());
+        for (int i = 0; i < s.length(); i++) size += WoodsyCodec.varintSize(s.charAt(i));
+        return size;
+    }
+
+    //-- Lists of pieces or numbers: a varint count, then a varint each
+    public static void putList(ByteBuffer out, ArrayList<Integer> list) {
+        int n = list.size();
+        WoodsyCodec.putVarint(out, n);
+        for (int i = 0; i < n; i++) WoodsyCodec.putVarint(out, list.get(i));
+    }
+
+    public static ArrayList<Integer> getList(ByteBuffer in) {
+        int n = WoodsyCodec.getCount(in);
+        ArrayList<Integer> list = new ArrayList<Integer>(n);
+        for (int i = 0; i < n; i++) list.add(WoodsyCodec.getVarint(in));
+        return list;
+    }
+
+    public static void putArray(ByteBuffer out, int[] a) {
+        WoodsyCodec.putVarint(out, a.length);
+        for (int v : a) WoodsyCodec.putVarint(out, v);
+    }
+
+    public static int[] getArray(ByteBuffer in) {
+        int[] a = new int[WoodsyCodec.getCount(in)];
+        for (int i = 0; i < a.length; i++) a[i] = WoodsyCodec.getVarint(in);
+        return a;
+    }
+
+    public static int listSize(ArrayList<Integer> list) {
+        int size = WoodsyCodec.varintSize(list.size());
+        for (int i = 0; i < list.size(); i++) size += WoodsyCodec.varintSize(list.get(i));
+        return size;
+    }
+
+    public static int arraySize(int[] a) {
+        int size = WoodsyCodec.varintSize(a.length);
+        for (int v : a) size += WoodsyCodec.varintSize(v);
+        return size;
+    }
+
+    private static int getCount(ByteBuffer in) {
+        // a list length, checked against what's left so a bad payload can't ask for a huge array.
+        int n = WoodsyCodec.getVarint(in);
+        if (n < 0 || n > in.remaining()) throw new IllegalArgumentException("bad list length " + n);
+        return n;
+    }
+}
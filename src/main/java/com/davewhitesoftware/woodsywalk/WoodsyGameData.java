@@ -7,26 +7,72 @@ package com.davewhitesoftware.woodsywalk;
 //  all the pieces in their shuffled order, which piece we are on, everyone's game boards,
 //  which colors of houses and people pieces have been placed, etc.
 //
+//  This class and the rules it uses (WoodsyRules) are plain Java with no Android in them, so a
+//  game can be played out anywhere.  A rejected move sets a result code (getLastError); the app
+//  turns that into a message with WoodsyRuleMessages when it needs to show one.
+//
+//  During a turn, every move that succeeds is written to a journal as a small block of ints:
+//  the board cells it changed (old and new values), the score it added, the goal points it used
+//  up, whether it used up the current piece, and the person-walking state before and after.
+//  undoStep and redoStep play the journal backwards and forwards one move at a time.
+//
+//  The bag isn't stored: it is shuffled from a 64-bit seed (see Pieces.pieces) whenever it is
+//  needed, so the same seed always deals the same game.  Games saved before there were seeds
+//  keep the bag they were dealt.
+//
+//  Each participant has a slot: their index in participantIds, in the order they joined.  The
+//  scores, boards and bag cursors are arrays indexed by slot, and the turn order is a ring of
+//  slots worked out when someone joins, so once a turn has begun nothing looks a player up by
+//  their id.  A game has at most MAX_PARTICIPANTS players, as many as a Play Games match can have.
+//
+//  applyTurn plays a whole turn in one call: a participant and an array of moves, each a cell
+//  index to play the current piece on (or to step to, when a person is walking) or MOVE_DISCARD.
+//  It is all or nothing: if a move is refused, everything the turn did is undone with the
+//  journal and the game is left as it was.
+//
+//  fork() makes a copy of a game that can be played on separately, for trying moves out.  It
+//  shares everything with the original: boards are copy-on-write (see WoodsyBoardData), and the
+//  scores and bag cursors are shared until either game first changes them, at which point that
+//  game takes its own copy.  So a fork only pays for what it actually changes.
+//
+//  hash() gives a 64-bit Zobrist hash (see WoodsyHash) of everything that matters for playing on:
+//  each player's board, score and place in the bag, the people and houses still to place, the
+//  goal points left, and how far the current turn has got.  The non-board part is updated move by
+//  move and worked out afresh at the start and end of each turn; each board keeps its own hash.
+//
+//  toByteArray/fromByteArray (and writeTo/readFrom, for a buffer you keep) use a compact binary
+//  format instead of Java serialization: a version byte, then a table with each participant's
+//  id, score, board cells and place in the bag, then the winner, the people and houses left,
+//  the bag's seed and the goal points.  See WoodsyCodec for how the numbers and cells are written.
+//  Only the state between turns is written; a turn in progress is not.
+//
+//  writeChangesSince writes just what changed since an earlier state of the same game (changed
+//  cells, how far each player got through the bag, score changes, which people and houses are
+//  left, goal points, the winner), and applyChanges plays that onto the earlier state.
+//  WoodsyStateDelta decides when to send that and when to send the whole game.
+//
 
 
-import android.content.Context;
-import android.text.TextUtils;
-
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
-public class WoodsyGameData implements Serializable {
-    static final long serialVersionUID = 1L;
-    private ArrayList<String> participantIds = new ArrayList<String>();
+public class WoodsyGameData implements Serializable, Cloneable {
+    static final long serialVersionUID = 4L;
+    public static final int FORMAT_VERSION = 1;     // first byte of the binary format
+    public static final int MAX_PARTICIPANTS = 8;
+    public static final int MOVE_DISCARD = WoodsyBoardData.CELLS;   // in applyTurn's moves, discard the current piece
+    private ArrayList<String> participantIds = new ArrayList<String>();     // the participant in each slot
     private String winner = "";        // when a game is completed, this is the participantId of the winner in the participant array above
     private ArrayList<Integer> remainingHouses = new ArrayList<Integer>();
     private ArrayList<Integer> remainingPersons = new ArrayList<Integer>();
-    private HashMap<String, ArrayList<Integer>> piecesToPlay = new HashMap<String,ArrayList<Integer>>();   // all the remaining pieces to play for each player.
-    private HashMap<String, WoodsyBoardData> boards = new HashMap<String, WoodsyBoardData>();  // all the boards for the players
-    private HashMap<String, Integer> scores = new HashMap<String, Integer>();    // all the player scores
-    private int[] pieceBag;     // the bag of pieces shuffled in random order, that gets assigned to each new participant.
-    private int minPiecesLeft;  // when we play a piece, if our individual player piece bag has fewer than this, we update the value.  If a new player enters, they discard pieces from the front until they have this number.  This keeps all the players playing the same piece.
+    private WoodsyBoardData[] boards = new WoodsyBoardData[0];  // all the boards for the players, by slot
+    private int[] scores = new int[0];     // all the player scores, by slot
+    private long bagSeed;       // the seed the bag of pieces is shuffled from; every participant plays through the bag in the same order.
+    private int[] bagCursors = new int[0];  // for each slot, the index in the bag of their next piece.  A new player starts level with whoever is furthest along, so all the players play the same piece.
     private int[] personScores;     // when a person meets a house, you get this number of points, and then the # of points is decremented until it is zero.
 
     private transient String currentParticipant;
@@ -37,12 +83,45 @@ public class WoodsyGameData implements Serializable {
     private transient int personMovesLeft = 0;  // During person moves, number of moves left.
     private transient boolean turnFinished = false;
     private transient Coordinates personCoordinates = new Coordinates(0,0); // track where the person is during person move
-    private transient String lastErrorMessage = "";
-    private transient Context currentContext;   // used for extracting string resources
+    private transient int lastError = WoodsyRules.OK;
+
+    //  The move journal for the current turn.  Each move is JOURNAL_STRIDE ints starting at
+    //  (move number * JOURNAL_STRIDE); the J_ constants are the offsets within a move.
+    private static final int J_CELL_A = 0, J_OLD_A = 1, J_NEW_A = 2;      // first cell changed (index -1 if none)
+    private static final int J_CELL_B = 3, J_OLD_B = 4, J_NEW_B = 5;      // second cell changed (index -1 if none)
+    private static final int J_SCORE = 6;                                 // points added to the current player
+    private static final int J_GOAL = 7, J_OLD_GOAL = 8, J_NEW_GOAL = 9;  // personScores entry changed (-1 if none)
+    private static final int J_FLAGS = 10;
+    private static final int J_WALK_BEFORE = 11, J_WALK_AFTER = 12;       // packed walking state, see packWalk
+    private static final int JOURNAL_STRIDE = 13;
+    private static final int FLAG_PIECE_PLAYED = 1;     // the move used up the current piece
+    private static final int FLAG_WINNER = 2;           // the move set the winner
+    private transient int[] journal;
+    private transient String[] journalWinners;          // winner before each move that set it
+    private transient int journalLength = 0;            // moves recorded
+    private transient int journalPosition = 0;          // moves currently applied; the rest can be redone
+    private transient int openStep = -1;                // offset of the move being recorded, or -1
+    private transient boolean sharedState = false;      // true if the lists and scores may be in use by a fork
+    private transient WoodsyReachability reachability;  // reused for every reachability question
+    private transient int currentSlot = -1;             // index of currentParticipant in participantIds
+    private transient int[] turnRing = new int[0];      // the slot whose turn comes after each slot
+    private transient int[] pieceBag;                   // the bag, shuffled when first needed; see bag()
+    private transient long stateHash;                   // Zobrist hash of everything but the boards
+    private transient boolean stateHashValid = false;   // false when stateHash has to be worked out again
+
+    private WoodsyGameData() {
+        // for readFrom, which fills everything in itself.
+    }
 
     WoodsyGameData(ArrayList<String> inputParticipantIds) {
         // Constructor: create a Woodsy game data structure based on the supplied player ID's.
-        this.lastErrorMessage = "";
+        this(inputParticipantIds, Pieces.newSeed());
+    }
+
+    WoodsyGameData(ArrayList<String> inputParticipantIds, long bagSeed) {
+        // Constructor with the seed for the piece bag, so the same game can be set up again
+        // (for simulations, benchmarks and bug reports).
+        this.lastError = WoodsyRules.OK;
         this.participantIds.clear();
         this.remainingHouses.clear();
         this.remainingPersons.clear();
@@ -52,13 +131,9 @@ public class WoodsyGameData implements Serializable {
             this.remainingPersons.add(Pieces.createPersonPiece(i));
             this.personScores[i-1] = this.maxPointsForGoal();
         }
-        this.piecesToPlay.clear();
-        this.boards.clear();
-        this.scores.clear();
         //
         //  prepare the piece bag
-        this.pieceBag = Pieces.pieces();
-        this.minPiecesLeft = this.pieceBag.length;
+        this.bagSeed = bagSeed;
         //
         //  now, add all the known  participants.
         //
@@ -67,41 +142,320 @@ public class WoodsyGameData implements Serializable {
         }
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        // Java serialization doesn't run the field initializers, so set up the turn state here.
+        in.defaultReadObject();
+        this.currentBoard = new WoodsyBoardData();
+        this.currentTurnPieces = new ArrayList<Integer>();
+        this.currentTurnPlayedPieces = new ArrayList<Integer>();
+        this.personCoordinates = new Coordinates(0,0);
+        this.lastError = WoodsyRules.OK;
+        this.openStep = -1;
+        this.currentSlot = -1;
+        this.turnRing = WoodsyGameData.makeTurnRing(this.participantIds.size());
+    }
+
+    //-- The binary format
+    public byte[] toByteArray() {
+        ByteBuffer out = ByteBuffer.allocate(this.encodedSize());
+        this.writeTo(out);
+        return out.array();
+    }
+
+    public static WoodsyGameData fromByteArray(byte[] bytes) {
+        return WoodsyGameData.readFrom(ByteBuffer.wrap(bytes));
+    }
+
+    public int encodedSize() {
+        // the exact number of bytes writeTo will write, for sizing a buffer.
+        int size = 1 + WoodsyCodec.varintSize(this.participantIds.size());
+        for (int slot = 0; slot < this.participantIds.size(); slot++) {
+            size += WoodsyCodec.stringSize(this.participantIds.get(slot));
+            size += WoodsyCodec.varintSize(this.scores[slot]);
+            size += WoodsyBoardData.CELLS * WoodsyCodec.CELL_BYTES;
+            size += WoodsyCodec.varintSize(this.bagCursors[slot]);
+        }
+        size += WoodsyCodec.stringSize(this.winner);
+        size += WoodsyCodec.listSize(this.remainingHouses) + WoodsyCodec.listSize(this.remainingPersons);
+        size += 8;      // the bag seed
+        size += WoodsyCodec.arraySize(this.personScores);
+        return size;
+    }
+
+    public int writeTo(ByteBuffer out) {
+        // Writes the game at out's position; returns the number of bytes written.
+        int start = out.position();
+        out.put((byte) FORMAT_VERSION);
+        WoodsyCodec.putVarint(out, this.participantIds.size());
+        for (int slot = 0; slot < this.participantIds.size(); slot++) {
+            WoodsyCodec.putString(out, this.participantIds.get(slot));
+            WoodsyCodec.putVarint(out, this.scores[slot]);
+            this.boards[slot].writeCells(out);
+            WoodsyCodec.putVarint(out, this.bagCursors[slot]);
+        }
+        WoodsyCodec.putString(out, this.winner);
+        WoodsyCodec.putList(out, this.remainingHouses);
+        WoodsyCodec.putList(out, this.remainingPersons);
+        out.putLong(this.bagSeed);
+        WoodsyCodec.putArray(out, this.personScores);
+        return out.position() - start;
+    }
+
+    public static WoodsyGameData readFrom(ByteBuffer in) {
+        // Reads a game written by writeTo, starting at in's position.
+        int version = in.get() & 0xFF;
+        if (version != FORMAT_VERSION) throw new IllegalArgumentException("unknown game data version " + version);
+        WoodsyGameData g = new WoodsyGameData();
+        int n = WoodsyCodec.getVarint(in);
+        if (n < 0 || n > MAX_PARTICIPANTS) throw new IllegalArgumentException("bad participant count " + n);
+        g.scores = new int[n];
+        g.boards = new WoodsyBoardData[n];
+        g.bagCursors = new int[n];
+        g.turnRing = WoodsyGameData.makeTurnRing(n);
+        for (int slot = 0; slot < n; slot++) {
+            g.participantIds.add(WoodsyCodec.getString(in));
+            g.scores[slot] = WoodsyCodec.getVarint(in);
+            g.boards[slot] = new WoodsyBoardData();
+            g.boards[slot].readCells(in);
+            g.bagCursors[slot] = WoodsyCodec.getVarint(in);
+        }
+        g.winner = WoodsyCodec.getString(in);
+        g.remainingHouses = WoodsyCodec.getList(in);
+        g.remainingPersons = WoodsyCodec.getList(in);
+        g.bagSeed = in.getLong();
+        for (int slot = 0; slot < n; slot++)
+            if (g.bagCursors[slot] < 0 || g.bagCursors[slot] > g.bagSize()) throw new IllegalArgumentException("bad bag cursor");
+        g.personScores = WoodsyGameData.getPersonScores(in);
+        return g;
+    }
+
+    public int writeChangesSince(WoodsyGameData previous, ByteBuffer out) {
+        // Writes what changed between previous and this game; returns the number of bytes
+        // written, or -1 (with nothing written) if the change can't be described that way,
+        // e.g. because someone joined.
+        if (!this.participantIds.equals(previous.participantIds) || this.bagSeed != previous.bagSeed)
+            return -1;
+        int n = this.participantIds.size();
+        int cellChanges = 0;
+        for (int slot = 0; slot < n; slot++) {
+            // players only ever move forward through the bag.
+            if (this.bagCursors[slot] < previous.bagCursors[slot]) return -1;
+            cellChanges += WoodsyGameData.countChanges(previous.boards[slot], this.boards[slot]);
+        }
+        int start = out.position();
+        WoodsyCodec.putVarint(out, cellChanges);
+        for (int slot = 0; slot < n; slot++) {
+            WoodsyBoardData before = previous.boards[slot];
+            WoodsyBoardData now = this.boards[slot];
+            if (before.sameCells(now)) continue;
+            for (int i = 0; i < WoodsyBoardData.CELLS; i++) {
+                if (before.getCellAt(i) == now.getCellAt(i)) continue;
+                WoodsyCodec.putVarint(out, slot);
+                out.put((byte) i);
+                WoodsyCodec.putCell(out, now.getCellAt(i));
+            }
+        }
+        for (int slot = 0; slot < n; slot++) {
+            WoodsyCodec.putVarint(out, this.bagCursors[slot] - previous.bagCursors[slot]);
+            WoodsyCodec.putSignedVarint(out, this.scores[slot] - previous.scores[slot]);
+        }
+        out.put((byte) WoodsyGameData.colorMask(this.remainingPersons));
+        out.put((byte) WoodsyGameData.colorMask(this.remainingHouses));
+        WoodsyCodec.putArray(out, this.personScores);
+        WoodsyCodec.putString(out, this.winner);
+        return out.position() - start;
+    }
+
+    private static int countChanges(WoodsyBoardData before, WoodsyBoardData now) {
+        if (before.sameCells(now)) return 0;
+        int n = 0;
+        for (int i = 0; i < WoodsyBoardData.CELLS; i++) if (before.getCellAt(i) != now.getCellAt(i)) n++;
+        return n;
+    }
+
+    private static int colorMask(ArrayList<Integer> pieces) {
+        // bit N set for each person or house of color N in the list.
+        int mask = 0;
+        for (int thisPiece : pieces) mask |= 1 << (Pieces.personNumber(thisPiece) | Pieces.houseNumber(thisPiece));
+        return mask;
+    }
+
+    public void applyChanges(ByteBuffer in) {
+        // Plays changes written by writeChangesSince onto this game, which has to be the same
+        // state they were written against.
+        this.ownState();
+        this.stateHashValid = false;
+        int n = this.participantIds.size();
+        int cellChanges = WoodsyCodec.getVarint(in);
+        for (int i = 0; i < cellChanges; i++) {
+            int slot = WoodsyCodec.getVarint(in);
+            int index = in.get() & 0xFF;
+            int p = WoodsyCodec.getCell(in);
+            if (slot >= n || !WoodsyRules.isValidIndex(index)) throw new IllegalArgumentException("bad cell change");
+            this.boards[slot].setCellAt(index, p);
+        }
+        for (int slot = 0; slot < n; slot++) {
+            int advance = WoodsyCodec.getVarint(in);
+            if (advance < 0 || advance > this.piecesLeft(slot)) throw new IllegalArgumentException("bad bag advance " + advance);
+            this.bagCursors[slot] += advance;
+            this.scores[slot] += WoodsyCodec.getSignedVarint(in);
+        }
+        int persons = in.get(), houses = in.get();
+        this.remainingPersons.clear();
+        this.remainingHouses.clear();
+        for (int i = 1; i <= Pieces.numberOfPeople(); i++) {
+            if ((persons & (1 << i)) != 0) this.remainingPersons.add(Pieces.createPersonPiece(i));
+            if ((houses & (1 << i)) != 0) this.remainingHouses.add(Pieces.createHousePiece(i));
+        }
+        this.personScores = WoodsyGameData.getPersonScores(in);
+        this.winner = WoodsyCodec.getString(in);
+    }
+
+    private static int[] getPersonScores(ByteBuffer in) {
+        // the goal points for each person, which has to be one for every person there is.
+        int[] points = WoodsyCodec.getArray(in);
+        if (points.length != Pieces.numberOfPeople()) throw new IllegalArgumentException("bad goal points count " + points.length);
+        return points;
+    }
+
     // methods that return game parameters-- currently constants
     public int pointsForGold() { return 2; }
     public int pointsForSilver() { return 1; }
     public int maxPointsForGoal() { return 5; }
+    public int[] tileMix() { return null; }     // the pieces in the bag, or null for the usual ones (Pieces.pieces)
 
     // private methods
-    private void addParticipantIfNeeded(String participantId) {
+    private void ownState() {
+        // Before changing the scores or piece lists, take a private copy if a fork might share them.
+        if (!this.sharedState) return;
+        this.participantIds = new ArrayList<String>(this.participantIds);
+        this.remainingHouses = new ArrayList<Integer>(this.remainingHouses);
+        this.remainingPersons = new ArrayList<Integer>(this.remainingPersons);
+        this.scores = this.scores.clone();
+        this.personScores = this.personScores.clone();
+        this.bagCursors = this.bagCursors.clone();
+        this.sharedState = false;
+    }
+
+    private int addParticipantIfNeeded(String participantId) {
         // Checks to see if a participant is already in the game and, if not, adds their
-        // information.
-        if (this.participantIds.contains(participantId)) return;   // already exists
+        // information.  Returns their slot.
+        int slot = this.slotOf(participantId);
+        if (slot >= 0) return slot;   // already exists
+        if (this.participantIds.size() >= MAX_PARTICIPANTS)
+            throw new IllegalStateException("a game can't have more than " + MAX_PARTICIPANTS + " participants");
+        this.ownState();
+        this.stateHashValid = false;
+        //  The new player starts in the bag where the player furthest along is, skipping the
+        //  pieces the others have already played.
+        int cursor = this.bagSize() - this.minPiecesLeft();
+        slot = this.participantIds.size();
         this.participantIds.add(participantId);
-        this.scores.put(participantId, 0);
-        this.boards.put(participantId, new WoodsyBoardData());
-        this.piecesToPlay.put(participantId, new ArrayList<Integer>());
-        //  The board manages itself, but for Pieces to Play, we have to copy the piece bag.
-        //  If other players have played pieces, we remove the ones they played from the front.
-        for (int thisPiece : this.pieceBag) this.piecesToPlay.get(participantId).add(thisPiece);
-        while (this.piecesToPlay.get(participantId).size() > this.minPiecesLeft)
-            this.piecesToPlay.get(participantId).remove(0);
+        this.scores = Arrays.copyOf(this.scores, slot + 1);
+        this.boards = Arrays.copyOf(this.boards, slot + 1);
+        this.boards[slot] = new WoodsyBoardData();
+        this.bagCursors = Arrays.copyOf(this.bagCursors, slot + 1);
+        this.bagCursors[slot] = cursor;
+        this.turnRing = WoodsyGameData.makeTurnRing(slot + 1);
+        return slot;
+    }
+
+    private static int[] makeTurnRing(int n) {
+        // each slot's turn is followed by the next slot's, and the last slot's by the first.
+        int[] ring = new int[n];
+        for (int slot = 0; slot < n; slot++) ring[slot] = (slot + 1 < n) ? slot + 1 : 0;
+        return ring;
+    }
+
+    private int slotOf(String participantId) {
+        // the participant's slot, or -1 if they aren't in the game.  There are at most
+        // MAX_PARTICIPANTS to look at, and the id is usually the very same String object.
+        for (int slot = 0; slot < this.participantIds.size(); slot++)
+            if (this.participantIds.get(slot) == participantId) return slot;
+        return this.participantIds.indexOf(participantId);
+    }
+
+    private int piecesLeft(int slot) {
+        // how many pieces a participant still has to play.
+        return this.bagSize() - this.bagCursors[slot];
+    }
+
+    private int[] bag() {
+        // the bag of pieces in the order they are played, shuffled from the seed the first time.
+        if (this.pieceBag == null) {
+            int[] mix = this.tileMix();
+            this.pieceBag = (mix != null) ? Pieces.pieces(mix, this.bagSeed) : Pieces.pieces(this.bagSeed);
+        }
+        return this.pieceBag;
+    }
+
+    private int bagSize() {
+        // the number of pieces in the bag, without needing to shuffle it.
+        int[] mix = this.tileMix();
+        return (mix != null) ? mix.length : Pieces.numberOfPieces();
+    }
+
+    public long getBagSeed() {
+        // the seed the bag was shuffled from: with it, the same game can be dealt again.
+        return this.bagSeed;
+    }
 
+    private int minPiecesLeft() {
+        // the fewest pieces any participant has left.
+        int furthest = 0;
+        for (int cursor : this.bagCursors) furthest = Math.max(furthest, cursor);
+        return this.bagSize() - furthest;
+    }
+
+    public WoodsyGameData fork() {
+        // Returns a copy of this game, including the turn in progress, that can be played on
+        // without affecting this one.  The copy starts with nothing to undo.
+        WoodsyGameData f;
+        try {
+            f = (WoodsyGameData) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        this.sharedState = true;
+        f.sharedState = true;
+        f.boards = new WoodsyBoardData[this.boards.length];
+        for (int slot = 0; slot < this.boards.length; slot++) f.boards[slot] = this.boards[slot].snapshot();
+        f.currentBoard = this.currentBoard.snapshot();
+        f.currentTurnPieces = new ArrayList<Integer>(this.currentTurnPieces);
+        f.currentTurnPlayedPieces = new ArrayList<Integer>(this.currentTurnPlayedPieces);
+        f.reachability = null;
+        f.journal = null;
+        f.journalWinners = null;
+        f.clearJournal();
+        return f;
     }
 
     // methods for accessing data and modifying it during the game
     public WoodsyBoardData getBoard(String participantId) {
         // returns the board corresponding to a participant ID, or null if not found
-        return this.boards.get(participantId);
+        int slot = this.slotOf(participantId);
+        return (slot < 0) ? null : this.boards[slot];
+    }
+
+    public int participantCount() {
+        return this.participantIds.size();
+    }
+
+    public String getParticipantId(int slot) {
+        return this.participantIds.get(slot);
+    }
+
+    public String getNextParticipantId(String participantId) {
+        // whose turn comes after participantId's, or null if they aren't in the game.
+        int slot = this.slotOf(participantId);
+        return (slot < 0) ? null : this.participantIds.get(this.turnRing[slot]);
     }
 
-    public void beginTurn(String participantId, Context contextSource) {
+    public void beginTurn(String participantId) {
         // Begin the current turn by copying the current player's board to the current board property.
-        // When you begin a turn, you also link the game data to an Android context that can get string resources.
-        this.addParticipantIfNeeded(participantId);
-        this.currentParticipant = participantId;
-        this.currentBoard.copyFrom(this.getBoard(participantId));
-        this.currentContext = contextSource;
+        this.currentSlot = this.addParticipantIfNeeded(participantId);
+        this.currentParticipant = this.participantIds.get(this.currentSlot);
+        this.currentBoard.copyFrom(this.boards[this.currentSlot]);
         // Also determine the current pieces to play on this turn, based on
         // availability of house/person pieces and number of players (2 player game:
         // each player plays 2 houses and 2 persons at the start)
@@ -119,20 +473,152 @@ public class WoodsyGameData implements Serializable {
         }
         if (this.currentTurnPieces.size() == 0) {
             // if no people or houses to place, place the next regular piece
-            if (this.piecesToPlay.get(participantId).size() > 0)
-                this.currentTurnPieces.add(this.piecesToPlay.get(participantId).get(0));
+            if (this.piecesLeft(this.currentSlot) > 0)
+                this.currentTurnPieces.add(this.bag()[this.bagCursors[this.currentSlot]]);
         }
         // Prepare various turn related transient properties.
         this.movingPerson = false;
         this.personMovesLeft = 0;
         this.turnFinished = false;
         this.personCoordinates = new Coordinates(0,0);
-        this.lastErrorMessage = "";
+        this.lastError = WoodsyRules.OK;
+        this.clearJournal();
+        this.stateHashValid = false;
     }
 
     public void rewindTurn() {
         // use this if the user rewinds their turn to the beginning.
-        this.beginTurn(this.currentParticipant, this.currentContext);
+        while (this.undoStep()) { }
+        this.lastError = WoodsyRules.OK;
+    }
+
+    //-- The move journal
+    private void clearJournal() {
+        this.journalLength = 0;
+        this.journalPosition = 0;
+        this.openStep = -1;
+    }
+
+    private int packWalk() {
+        // packs movingPerson, personMovesLeft and the person's cell into one int.
+        int index = WoodsyBoardData.indexOf(this.personCoordinates.x(), this.personCoordinates.y());
+        return (this.movingPerson ? 1 : 0) | (this.personMovesLeft << 1) | (index << 8);
+    }
+
+    private void unpackWalk(int w) {
+        this.movingPerson = (w & 1) != 0;
+        this.personMovesLeft = (w >> 1) & 0x7F;
+        this.personCoordinates = WoodsyBoardData.coordinatesOf(w >>> 8);
+    }
+
+    private void beginStep() {
+        // called once a move has passed the rules, before it changes anything.
+        if (this.journal == null) {
+            this.journal = new int[16 * JOURNAL_STRIDE];
+            this.journalWinners = new String[16];
+        }
+        int n = this.journalPosition;
+        if ((n + 1) * JOURNAL_STRIDE > this.journal.length) {
+            this.journal = Arrays.copyOf(this.journal, this.journal.length * 2);
+            this.journalWinners = Arrays.copyOf(this.journalWinners, this.journalWinners.length * 2);
+        }
+        int o = n * JOURNAL_STRIDE;
+        this.journal[o + J_CELL_A] = -1;
+        this.journal[o + J_CELL_B] = -1;
+        this.journal[o + J_SCORE] = 0;
+        this.journal[o + J_GOAL] = -1;
+        this.journal[o + J_FLAGS] = 0;
+        this.journal[o + J_WALK_BEFORE] = this.packWalk();
+        this.openStep = o;
+    }
+
+    private void endStep() {
+        // called when a move is complete; anything that could have been redone is now gone.
+        this.journal[this.openStep + J_WALK_AFTER] = this.packWalk();
+        this.hashWalk(this.journal[this.openStep + J_WALK_BEFORE], this.journal[this.openStep + J_WALK_AFTER]);
+        this.openStep = -1;
+        this.journalPosition++;
+        this.journalLength = this.journalPosition;
+    }
+
+    private void setCurrentCell(int index, int p) {
+        // changes a cell of the current board, noting it in the open journal entry.
+        int o = this.openStep;
+        int slot = (this.journal[o + J_CELL_A] < 0) ? J_CELL_A : J_CELL_B;
+        this.journal[o + slot] = index;
+        this.journal[o + slot + 1] = this.currentBoard.getCellAt(index);
+        this.journal[o + slot + 2] = p;
+        this.currentBoard.setCellAt(index, p);
+    }
+
+    private void setGoalPoints(int color, int points) {
+        // changes an entry of personScores, noting it in the open journal entry.
+        int o = this.openStep;
+        this.journal[o + J_GOAL] = color;
+        this.journal[o + J_OLD_GOAL] = this.personScores[color];
+        this.journal[o + J_NEW_GOAL] = points;
+        this.setPersonScore(color, points);
+    }
+
+    private void setPersonScore(int color, int points) {
+        this.ownState();
+        if (this.stateHashValid)
+            this.stateHash ^= WoodsyHash.key(WoodsyHash.GOAL_POINTS, color, this.personScores[color]) ^ WoodsyHash.key(WoodsyHash.GOAL_POINTS, color, points);
+        this.personScores[color] = points;
+    }
+
+    private void setWinner(String w) {
+        // sets the winner during a turn, noting it in the open journal entry.
+        this.journal[this.openStep + J_FLAGS] |= FLAG_WINNER;
+        this.journalWinners[this.openStep / JOURNAL_STRIDE] = this.winner;
+        this.winner = w;
+    }
+
+    public boolean canUndo() { return this.journalPosition > 0; }
+    public boolean canRedo() { return this.journalPosition < this.journalLength; }
+
+    public boolean undoStep() {
+        // Takes back the last move of this turn.  Returns false if there is nothing to take back.
+        if (!this.canUndo()) return false;
+        this.journalPosition--;
+        int o = this.journalPosition * JOURNAL_STRIDE;
+        int[] j = this.journal;
+        if (j[o + J_CELL_B] >= 0) this.currentBoard.setCellAt(j[o + J_CELL_B], j[o + J_OLD_B]);
+        if (j[o + J_CELL_A] >= 0) this.currentBoard.setCellAt(j[o + J_CELL_A], j[o + J_OLD_A]);
+        if (j[o + J_SCORE] != 0) this.addScore(-j[o + J_SCORE]);
+        if (j[o + J_GOAL] >= 0) this.setPersonScore(j[o + J_GOAL], j[o + J_OLD_GOAL]);
+        if ((j[o + J_FLAGS] & FLAG_WINNER) != 0) this.winner = this.journalWinners[this.journalPosition];
+        if ((j[o + J_FLAGS] & FLAG_PIECE_PLAYED) != 0) {
+            int last = this.currentTurnPlayedPieces.size() - 1;
+            this.currentTurnPieces.add(0, this.currentTurnPlayedPieces.remove(last));
+            this.turnFinished = false;
+            this.hashTurnProgress(last + 1, last);
+        }
+        this.hashWalk(j[o + J_WALK_AFTER], j[o + J_WALK_BEFORE]);
+        this.unpackWalk(j[o + J_WALK_BEFORE]);
+        this.lastError = WoodsyRules.OK;
+        return true;
+    }
+
+    public boolean redoStep() {
+        // Plays again the last move that was taken back.  Returns false if there is nothing to redo.
+        if (!this.canRedo()) return false;
+        int o = this.journalPosition * JOURNAL_STRIDE;
+        int[] j = this.journal;
+        if (j[o + J_CELL_A] >= 0) this.currentBoard.setCellAt(j[o + J_CELL_A], j[o + J_NEW_A]);
+        if (j[o + J_CELL_B] >= 0) this.currentBoard.setCellAt(j[o + J_CELL_B], j[o + J_NEW_B]);
+        if (j[o + J_SCORE] != 0) this.addScore(j[o + J_SCORE]);
+        if (j[o + J_GOAL] >= 0) this.setPersonScore(j[o + J_GOAL], j[o + J_NEW_GOAL]);
+        if ((j[o + J_FLAGS] & FLAG_WINNER) != 0) this.winner = this.currentParticipant;
+        if ((j[o + J_FLAGS] & FLAG_PIECE_PLAYED) != 0) {
+            this.currentTurnPlayedPieces.add(this.currentTurnPieces.remove(0));
+            this.hashTurnProgress(this.currentTurnPlayedPieces.size() - 1, this.currentTurnPlayedPieces.size());
+        }
+        this.hashWalk(j[o + J_WALK_BEFORE], j[o + J_WALK_AFTER]);
+        this.unpackWalk(j[o + J_WALK_AFTER]);
+        this.journalPosition++;
+        this.lastError = WoodsyRules.OK;
+        return true;
     }
 
     public boolean piecesLeftThisTurn() {
@@ -150,135 +636,251 @@ public class WoodsyGameData implements Serializable {
         return this.currentTurnPieces.get(0);
     }
 
-    public String getLastErrorMessage() {
-        // returns the last error message generally produced by playPieceAt.
-        return this.lastErrorMessage;
+    public int getLastError() {
+        // returns the result code (see WoodsyRules) of the last move, generally produced by playPieceAt.
+        return this.lastError;
     }
 
-    private int setFailure(String msg) {
-        // Sets the last error message to msg, and returns the failure piece.
-        this.lastErrorMessage = msg;
+    private int setFailure(int result) {
+        // Sets the last error to the result code, and returns the failure piece.
+        this.lastError = result;
         return Pieces.createFailurePiece();
     }
 
-    private String getString(int resId) {
-        // uses the current context, set during beginTurn, to get a string resource.
-        return this.currentContext.getString(resId);
-    }
-
     private void setCurrentPiecePlayed() {
         // used inside of playPieceAt to move a piece that was played from the "to-play" array to the "played" array.
         if (this.currentTurnPieces.size()==0) return;
         this.currentTurnPlayedPieces.add(this.currentTurnPieces.get(0));
         this.currentTurnPieces.remove(0);
+        this.hashTurnProgress(this.currentTurnPlayedPieces.size() - 1, this.currentTurnPlayedPieces.size());
+        if (this.openStep >= 0) this.journal[this.openStep + J_FLAGS] |= FLAG_PIECE_PLAYED;
     }
 
     private void incrementScore(int x) {
-        // Increments the score of the current player.
-        int newScore = this.scores.get(this.currentParticipant) + x;
-        this.scores.put(this.currentParticipant, newScore);
+        // Increments the score of the current player as part of a move.
+        this.journal[this.openStep + J_SCORE] += x;
+        this.addScore(x);
+    }
+
+    private void addScore(int x) {
+        this.ownState();
+        int oldScore = this.scores[this.currentSlot];
+        int newScore = oldScore + x;
+        this.scores[this.currentSlot] = newScore;
+        if (this.stateHashValid)
+            this.stateHash ^= WoodsyHash.key(WoodsyHash.SCORE, this.currentSlot, oldScore) ^ WoodsyHash.key(WoodsyHash.SCORE, this.currentSlot, newScore);
+    }
+
+    //-- Hashing
+    private void hashWalk(int before, int after) {
+        if (this.stateHashValid)
+            this.stateHash ^= WoodsyHash.key(WoodsyHash.WALK, 0, before) ^ WoodsyHash.key(WoodsyHash.WALK, 0, after);
+    }
+
+    private void hashTurnProgress(int before, int after) {
+        if (this.stateHashValid)
+            this.stateHash ^= WoodsyHash.key(WoodsyHash.TURN_PROGRESS, 0, before) ^ WoodsyHash.key(WoodsyHash.TURN_PROGRESS, 0, after);
+    }
+
+    private void recomputeStateHash() {
+        // works out the hash of everything but the boards from scratch.
+        long h = 0;
+        for (int slot = 0; slot < this.participantIds.size(); slot++) {
+            h ^= WoodsyHash.key(WoodsyHash.SCORE, slot, this.scores[slot]);
+            h ^= WoodsyHash.key(WoodsyHash.BAG_POSITION, slot, this.bagCursors[slot]);
+        }
+        for (int color = 0; color < this.personScores.length; color++)
+            h ^= WoodsyHash.key(WoodsyHash.GOAL_POINTS, color, this.personScores[color]);
+        int remaining = 0;
+        for (int thisPiece : this.remainingPersons) remaining |= 1 << Pieces.personNumber(thisPiece);
+        for (int thisPiece : this.remainingHouses) remaining |= 1 << (8 + Pieces.houseNumber(thisPiece));
+        h ^= WoodsyHash.key(WoodsyHash.REMAINING, 0, remaining);
+        h ^= WoodsyHash.key(WoodsyHash.MIN_PIECES_LEFT, 0, this.minPiecesLeft());
+        h ^= WoodsyHash.key(WoodsyHash.PARTICIPANT, 0, this.currentSlot);
+        h ^= WoodsyHash.key(WoodsyHash.WALK, 0, this.packWalk());
+        h ^= WoodsyHash.key(WoodsyHash.TURN_PROGRESS, 0, this.currentTurnPlayedPieces.size());
+        this.stateHash = h;
+        this.stateHashValid = true;
+    }
+
+    public long hash() {
+        // Returns the Zobrist hash of the game as it stands, including the turn in progress.
+        // Games that play out the same way have the same hash.
+        if (!this.stateHashValid) this.recomputeStateHash();
+        long h = this.stateHash;
+        for (int slot = 0; slot < this.participantIds.size(); slot++) {
+            WoodsyBoardData b = (slot == this.currentSlot) ? this.currentBoard : this.boards[slot];
+            h ^= WoodsyHash.mix(b.hash() ^ WoodsyHash.key(WoodsyHash.BOARD, slot, 0));
+        }
+        return h;
     }
 
     public int playPieceAt(int p, int x, int y) {
         //  Plays the valid piece P at (x,y) on the board.  Returns the Success piece on regular success
         //  (with the board updated), the Failure piece if the move is invalid, or, if a person has
         //  begun moving, it returns a pure Person piece to indicate which person is moving.
-        //  If you get a failure piece, you can get an error message using getLastErrorMessage.
-        Coordinates c = new Coordinates(x,y);
+        //  If you get a failure piece, you can find out why using getLastError.
+        this.lastError = WoodsyRules.OK;
         // check if there are no moves left
-        if (this.movingPerson && this.personMovesLeft <= 0) return this.setFailure(getString(R.string.all_moves_finished));
-        if (!this.piecesLeftThisTurn()) return this.setFailure(getString(R.string.turn_finished));
+        if (this.movingPerson && this.personMovesLeft <= 0) return this.setFailure(WoodsyRules.ALL_MOVES_FINISHED);
+        if (!this.piecesLeftThisTurn()) return this.setFailure(WoodsyRules.TURN_FINISHED);
         // check for valid coordinates, retrieve the current piece on the board.
-        if (!this.currentBoard.isValidCoords(c)) return this.setFailure(getString(R.string.invalid_coords));
-        int currentPiece = this.currentBoard.getCell(c);
+        if (x < 0 || x >= WoodsyBoardData.WIDTH || y < 0 || y >= WoodsyBoardData.HEIGHT) return this.setFailure(WoodsyRules.INVALID_COORDS);
+        int index = WoodsyBoardData.indexOf(x, y);
+        int currentPiece = this.currentBoard.getCellAt(index);
+        int result;
         // check game rules and place piece based on which kind it is.
         if (Pieces.isPerson(p) && this.movingPerson) {
-            // Playing a single step in moving a person.  First, see if there is a path to move the person.
+            // Playing a single step in moving a person.
             // (The situation of having no moves left was already handled up top.)
-            int sourcePiece = this.currentBoard.getCell(this.personCoordinates);
-            int thisPersonPiece = Pieces.getPersonPieceFrom(sourcePiece);
-            int thisPersonNumber = Pieces.personNumber(thisPersonPiece);
-            int goalPiece = this.currentBoard.createGoalPiece(thisPersonNumber,0,c);
-            boolean reachedGoal = (goalPiece == currentPiece);
-            if (Pieces.personNumber(currentPiece) > 0)
-                return this.setFailure(getString(R.string.only_one_person_in_square_at_time));
-            if (!Pieces.piecesConnect(this.currentBoard.getCell(this.personCoordinates), currentPiece, this.personCoordinates.x(), this.personCoordinates.y(), x, y))
-                return this.setFailure(getString(R.string.person_has_no_path));
-            if (this.currentBoard.isOnEdge(c) && !reachedGoal)
-                return this.setFailure(getString(R.string.person_on_edge_can_only_go_to_their_house));
+            int from = WoodsyBoardData.indexOf(this.personCoordinates.x(), this.personCoordinates.y());
+            result = WoodsyRules.checkStep(this.currentBoard, from, index);
+            if (result != WoodsyRules.OK) return this.setFailure(result);
             //-- it appears that we now have a valid move.
             //-- move the person
+            this.beginStep();
+            int sourcePiece = this.currentBoard.getCellAt(from);
+            int thisPersonNumber = Pieces.personNumber(sourcePiece);
+            boolean reachedGoal = (Pieces.houseNumber(currentPiece) == thisPersonNumber);
             sourcePiece = Pieces.setPersonNumber(sourcePiece,0);
             currentPiece = Pieces.setPersonNumber(currentPiece,thisPersonNumber);
-            this.currentBoard.setCell(this.personCoordinates,sourcePiece);
+            this.setCurrentCell(from,sourcePiece);
             this.personMovesLeft--;
-            this.personCoordinates = c;
+            this.personCoordinates = WoodsyBoardData.coordinatesOf(index);
             //-- check for coins
             if (Pieces.gold(currentPiece) || Pieces.silver(currentPiece)) {
                 if (Pieces.gold(currentPiece)) this.incrementScore(this.pointsForGold());
                 if (Pieces.silver(currentPiece)) this.incrementScore(this.pointsForSilver());
-                currentPiece = Pieces.setCoins(currentPiece,false,false);
+                currentPiece = Pieces.takeCoins(currentPiece);
             }
             //-- check for reaching goal
             if (reachedGoal) {
-                this.incrementScore(this.personScores[thisPersonNumber]);
-                this.personScores[thisPersonNumber]--;
-                if (this.personScores[thisPersonNumber]<0) this.personScores[thisPersonNumber] = 0;
-                //-- check: have we won by finding all the goals?
-                if (this.currentBoard.isWinningBoard()) this.winner = this.currentParticipant;
+                this.incrementScore(this.personScores[thisPersonNumber-1]);
+                this.setGoalPoints(thisPersonNumber-1, Math.max(this.personScores[thisPersonNumber-1] - 1, 0));
+                this.personMovesLeft = 0;   // once home, the person stays home
             }
-            //-- now our piece is ready to store and we can return.
-            this.currentBoard.setCell(c, currentPiece);
+            //-- now our piece is ready to store
+            this.setCurrentCell(index, currentPiece);
+            //-- check: have we won by finding all the goals?
+            if (reachedGoal && this.currentBoard.isWinningBoard()) this.setWinner(this.currentParticipant);
+            this.endStep();
             return Pieces.createSuccessPiece();
         }
         else if (Pieces.isPerson(p) || Pieces.isHouse(p)) {
             // Playing a person piece or house piece when you're not moving a person.
-            if (!this.currentBoard.isOnEdge(c)) return this.setFailure(getString(R.string.people_and_houses_edge_only));  // person piece has to be placed on edge
-            if (this.currentBoard.distanceToPartner(p, c) < 5) return this.setFailure(getString(R.string.house_person_too_close));  // person piece can't be too close to house piece
-            if (!Pieces.isGreenGrassPiece(currentPiece)) return this.setFailure(getString(R.string.houses_and_people_only_on_green_grass));  // have to put house or person on green grass.
+            result = WoodsyRules.checkPlacePersonOrHouse(this.currentBoard, p, index);
+            if (result != WoodsyRules.OK) return this.setFailure(result);
             // combine the pieces and store the result
             int newPiece = Pieces.combinePieces(currentPiece, p);
-            if (Pieces.isFailurePiece(newPiece)) return this.setFailure(getString(R.string.unexpected_problem));
-            this.currentBoard.setCell(c, newPiece);
+            if (Pieces.isFailurePiece(newPiece)) return this.setFailure(WoodsyRules.UNEXPECTED_PROBLEM);
+            this.beginStep();
+            this.setCurrentCell(index, newPiece);
             this.setCurrentPiecePlayed();
+            this.endStep();
             return Pieces.createSuccessPiece();
         } else {
             // Playing a regular piece.  If you play it against an existing piece with a person on it,
             // it starts person-moving mode.  If you play it on a blank square, it places the piece.
             // Other moves are invalid.
-            if (this.currentBoard.isOnEdge(c))
-                return this.setFailure(getString(R.string.cant_play_path_piece_on_edge));
+            result = WoodsyRules.checkPlayTile(this.currentBoard, index);
+            if (result != WoodsyRules.OK) return this.setFailure(result);
             if (Pieces.personNumber(currentPiece) > 0) {
-                // Begin person moving mode
+                // Begin person moving mode: the person gets one move for each road on the tile played.
+                // The tile stays the current piece until endTurn, so the person can keep walking.
+                this.beginStep();
                 this.movingPerson = true;
-                this.personCoordinates = c;
-                this.personMovesLeft = Pieces.numberMoves(currentPiece);
-                this.setCurrentPiecePlayed();
+                this.personCoordinates = WoodsyBoardData.coordinatesOf(index);
+                this.personMovesLeft = Pieces.numberMoves(p);
+                this.endStep();
                 return Pieces.createSuccessPiece();
             }
-            else if (Pieces.isBlank(currentPiece)) {
-                // Placing tile in blank space
-                this.currentBoard.setCell(c, p);
-                this.setCurrentPiecePlayed();
-                return Pieces.createSuccessPiece();
-            }
-            else
-                return this.setFailure(getString(R.string.cant_move_there));
+            // Placing tile in blank space
+            this.beginStep();
+            this.setCurrentCell(index, p);
+            this.setCurrentPiecePlayed();
+            this.endStep();
+            return Pieces.createSuccessPiece();
         }
-        // Shouldn't get here, and indeed, the compiler says you can't get here.
     }
 
     public int playPieceDiscard(int p) {
         //  Discards a piece.  Of course you can't discard people or house pieces, and discarding
         //  doesn't work if you started moving a person.
         //  Returns the success or failure piece.
-        if (this.movingPerson) return this.setFailure(getString(R.string.cant_discard_moving_person));
-        if (Pieces.isHouse(p)) return this.setFailure(getString(R.string.cant_discard_house));
-        if (Pieces.isPerson(p)) return this.setFailure(getString(R.string.cant_discard_person));
+        int result = WoodsyRules.checkDiscard(p, this.movingPerson);
+        if (result != WoodsyRules.OK) return this.setFailure(result);
+        this.lastError = WoodsyRules.OK;
+        this.beginStep();
         this.setCurrentPiecePlayed();  // put the piece in the played pile
+        this.endStep();
         return Pieces.createSuccessPiece();
     }
 
+    public int applyTurn(String participantId, int[] moves) {
+        return this.applyTurn(participantId, moves, moves.length);
+    }
+
+    public int applyTurn(String participantId, int[] moves, int count) {
+        //  Plays a whole turn for participantId: begins it, makes the first count moves, and ends
+        //  it.  Returns -1 if every move worked.  Otherwise returns the index of the first move
+        //  that didn't, with the reason in getLastError, and leaves the game as it was before,
+        //  between turns (any turn that was in progress is gone, as with beginTurn).
+        int participantsBefore = this.participantIds.size();
+        this.beginTurn(participantId);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int p = this.getNextPiece();
+            int result;
+            if (move == MOVE_DISCARD)
+                result = this.piecesLeftThisTurn() ? this.playPieceDiscard(p) : this.setFailure(WoodsyRules.TURN_FINISHED);
+            else if (move >= 0 && move < WoodsyBoardData.CELLS)
+                result = this.playPieceAt(p, WoodsyBoardData.xOf(move), WoodsyBoardData.yOf(move));
+            else
+                result = this.setFailure(WoodsyRules.INVALID_COORDS);
+            if (Pieces.isFailurePiece(result)) {
+                int error = this.lastError;
+                this.abandonTurn(participantsBefore);
+                this.lastError = error;
+                return i;
+            }
+        }
+        this.endTurn();
+        return -1;
+    }
+
+    private void abandonTurn(int participants) {
+        // Takes back the turn in progress, and the participant too if beginning the turn added
+        // them, leaving the game between turns with nobody's turn begun.
+        this.rewindTurn();
+        if (this.participantIds.size() > participants) {
+            this.ownState();
+            this.participantIds.remove(participants);
+            this.scores = Arrays.copyOf(this.scores, participants);
+            this.boards = Arrays.copyOf(this.boards, participants);
+            this.bagCursors = Arrays.copyOf(this.bagCursors, participants);
+            this.turnRing = WoodsyGameData.makeTurnRing(participants);
+        }
+        this.currentSlot = -1;
+        this.currentParticipant = null;
+        this.currentTurnPieces.clear();
+        this.currentTurnPlayedPieces.clear();
+        this.clearJournal();
+        this.stateHashValid = false;
+    }
+
+    public long legalMoves(int p) {
+        //  Returns the cells where playPieceAt would accept piece P right now, as a bitmask with
+        //  bit N set for cell index N (see WoodsyBoardData.indexOf).  Nothing is changed.
+        if (this.movingPerson && this.personMovesLeft <= 0) return 0;
+        if (this.turnFinished || this.currentTurnPieces.size() == 0) return 0;
+        if (Pieces.isPerson(p) && this.movingPerson)
+            return WoodsyRules.stepTargets(this.currentBoard, WoodsyBoardData.indexOf(this.personCoordinates.x(), this.personCoordinates.y()));
+        else if (Pieces.isPerson(p) || Pieces.isHouse(p))
+            return WoodsyRules.placePersonOrHouseTargets(this.currentBoard, p);
+        else
+            return WoodsyRules.playTileTargets(this.currentBoard);
+    }
+
     public boolean movingPerson() {
         // True if a person is moving as a result of the last play.
         return this.movingPerson;
@@ -289,9 +891,55 @@ public class WoodsyGameData implements Serializable {
         return this.personMovesLeft;
     }
 
+    public int movingPersonCell() {
+        // the cell index of the person who is moving, or -1 if nobody is.
+        if (!this.movingPerson) return -1;
+        return WoodsyBoardData.indexOf(this.personCoordinates.x(), this.personCoordinates.y());
+    }
+
+    public WoodsyReachability personReachability() {
+        // While a person is moving, works out where they can get to with the moves they have left.
+        // The returned object is reused on every call, so read what you need before asking again.
+        if (this.reachability == null) this.reachability = new WoodsyReachability();
+        if (this.movingPerson)
+            this.reachability.compute(this.currentBoard, WoodsyBoardData.indexOf(this.personCoordinates.x(), this.personCoordinates.y()), this.personMovesLeft);
+        else
+            this.reachability.compute(this.currentBoard, -1, 0);
+        return this.reachability;
+    }
+
     public int piecesLeftInBag() {
         // For display purposes, you might want to know how many pieces are left in the whole bag.
-        return this.piecesToPlay.get(this.currentParticipant).size();
+        return this.piecesLeft(this.currentSlot);
+    }
+
+    public int[] piecesToCome(String participantId) {
+        // the pieces a participant still has to play from the bag, in the order they'll get them
+        // (including the one in a turn in progress).  Empty if they aren't in the game.
+        int slot = this.slotOf(participantId);
+        if (slot < 0) return new int[0];
+        return Arrays.copyOfRange(this.bag(), this.bagCursors[slot], this.bagSize());
+    }
+
+    public int getScore(String participantId) {
+        // returns a participant's score, or 0 if they aren't in the game
+        int slot = this.slotOf(participantId);
+        return (slot < 0) ? 0 : this.scores[slot];
+    }
+
+    public int getScore(int slot) {
+        return this.scores[slot];
+    }
+
+    public int getGoalPoints(int personNumber) {
+        // the points person personNumber would get for reaching their house now.
+        if (personNumber <= 0 || personNumber > this.personScores.length) return 0;
+        return this.personScores[personNumber - 1];
+    }
+
+    public String getCurrentParticipant() {
+        // the participant whose turn was begun last.
+        return this.currentParticipant;
     }
 
     public WoodsyBoardData getCurrentBoard() {
@@ -304,38 +952,36 @@ public class WoodsyGameData implements Serializable {
         // it saves the proposed turn into the actual current participant's board.
         // it also removes all the played pieces permanently from where they came from.
         if (this.movingPerson) this.setCurrentPiecePlayed();  // if we were moving a person, we didn't actually put the piece in the played pile till now.
+        this.ownState();
+        this.clearJournal();    // the turn is final now, so there's nothing left to undo
         for (int thisPlayedPiece : this.currentTurnPlayedPieces) {
             if (Pieces.isPerson(thisPlayedPiece))
-                this.remainingPersons.remove(Integer.valueOf(Pieces.personNumber(thisPlayedPiece)));
+                this.remainingPersons.remove(Integer.valueOf(thisPlayedPiece));
             else if (Pieces.isHouse(thisPlayedPiece))
-                this.remainingHouses.remove(Integer.valueOf(Pieces.houseNumber(thisPlayedPiece)));
+                this.remainingHouses.remove(Integer.valueOf(thisPlayedPiece));
             else
-                this.piecesToPlay.get(this.currentParticipant).remove(Integer.valueOf(thisPlayedPiece));
+                this.bagCursors[this.currentSlot]++;     // a tile is always the next piece in the bag
         }
-        //--  check if there is now a new minimum number of pieces
-        if (this.piecesLeftInBag() < this.minPiecesLeft) this.minPiecesLeft = this.piecesLeftInBag();
         //--  now check to see if anybody has pieces left!
         int participantsWithPieces = 0;
-        for (String thisParticipantId : this.participantIds) {
-            if (this.piecesToPlay.get(thisParticipantId).size() > 0) participantsWithPieces++;
+        for (int slot = 0; slot < this.participantIds.size(); slot++) {
+            if (this.piecesLeft(slot) > 0) participantsWithPieces++;
         }
         if (participantsWithPieces == 0) {
             // nobody has pieces-- game is over!  find and declare the winner.
-            int maxScore = 0; ArrayList<String> playersWithMaxScore = new ArrayList<String>();
-            playersWithMaxScore.clear();
-            for (String thisParticipantId : this.participantIds) {
-                if (this.scores.get(thisParticipantId) == maxScore)
-                    playersWithMaxScore.add(thisParticipantId);
-                if (this.scores.get(thisParticipantId) > maxScore) {
-                    maxScore = this.scores.get(thisParticipantId);
-                    playersWithMaxScore.clear();
-                    playersWithMaxScore.add(thisParticipantId);
-                }
+            int maxScore = 0;
+            for (int slot = 0; slot < this.participantIds.size(); slot++) maxScore = Math.max(maxScore, this.scores[slot]);
+            StringBuilder winners = new StringBuilder();
+            for (int slot = 0; slot < this.participantIds.size(); slot++) {
+                if (this.scores[slot] != maxScore) continue;
+                if (winners.length() > 0) winners.append(", ");
+                winners.append(this.participantIds.get(slot));
             }
-            this.winner = TextUtils.join(", ", playersWithMaxScore);
+            this.winner = winners.toString();
         }
         //--- now that we've removed played pieces, save the board.
-        this.boards.get(this.currentParticipant).copyFrom(this.currentBoard);
+        this.boards[this.currentSlot].copyFrom(this.currentBoard);
+        this.stateHashValid = false;
     }
 
     public String getWinner() {
@@ -345,6 +991,6 @@ public class WoodsyGameData implements Serializable {
 
     public boolean gameOver() {
         // returns true if the game is over (determined by whether a winner has been set)
-        return (this.winner.length() == 0);
+        return (this.winner.length() > 0);
     }
 }
@@ -0,0 +1,45 @@
+package com.davewhitesoftware.woodsywalk;
+
+//
+//  WoodsyHash: An object with only static methods (so don't instantiate it, no need) that makes
+//  the random-looking 64-bit keys for Zobrist hashing of boards and games.
+//
+//  A Zobrist hash is the XOR of one key per feature of the state (this piece on this cell, this
+//  score for this player, ...).  Changing one feature only needs its old key XORed out and the
+//  new key XORed in, so hashes can be kept up to date as the state changes.  The usual way is a
+//  table of random numbers, but a piece has 18 bits, so instead each key is made by scrambling
+//  the feature's numbers with a 64-bit mixing function.  The keys are the same every run, so
+//  hashes can be saved and compared later.
+//
+
+public class WoodsyHash {
+    // Kinds of feature, so that e.g. a score of 3 and a bag position of 3 get different keys.
+    public static final int CELL = 1;
+    public static final int SCORE = 2;
+    public static final int GOAL_POINTS = 3;
+    public static final int REMAINING = 4;
+    public static final int BAG_POSITION = 5;
+    public static final int MIN_PIECES_LEFT = 6;
+    public static final int WALK = 7;
+    public static final int TURN_PROGRESS = 8;
+    public static final int PARTICIPANT = 9;
+    public static final int BOARD = 10;
+
+    public static long mix(long z) {
+        // the finalizer from SplitMix64: every input bit affects every output bit.
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static long key(int kind, int slot, int value) {
+        // the key for a feature: what kind it is, which cell/player/color it belongs to, and its value.
+        return WoodsyHash.mix(((long) kind << 56) ^ ((long) slot << 40) ^ (value & 0xFFFFFFFFL) ^ 0x9E3779B97F4A7C15L);
+    }
+
+    public static long cell(int index, int p) {
+        // the key for piece p on a cell.  Blank cells have no key, so an empty middle adds nothing.
+        if (p == 0) return 0;
+        return WoodsyHash.key(CELL, index, p);
+    }
+}
@@ -0,0 +1,280 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//
+//  WoodsyHintEngine: suggests the next moves for the turn in progress -- where to play the
+//  piece, or to discard it, or which way to walk a person -- while the player thinks.
+//
+//  start() hands a fork of the game to a background thread and returns straight away.  The
+//  search looks one move ahead, then two, then three, and so on (iterative deepening), and
+//  after each depth it passes the best line so far to the listener, so the suggestion gets
+//  better the longer the player waits.  Looking ahead goes on into the player's own later
+//  turns: every player gets the same tiles from the bag, so the tiles to come are known.  The
+//  other players' turns in between are left out, since what they will do isn't known, and that
+//  makes two things look better than they are: persons and houses come from one pile, so later
+//  turns may get pairs the others would have taken first, and goal points go down when anyone
+//  gets that person home, so goals a few turns off count at full value.  Neither matters within
+//  the turn in progress, which is what the hint is for.  Where it has to stop looking, a
+//  position is worth the score so far plus something for each person who could walk home along
+//  the roads already down (see evaluate).
+//
+//  cancel() stops the search within a node or so, and never waits for it; call it when the
+//  player taps a cell or the turn ends.  A search also stops at its time budget, or once it
+//  has seen to the end of the game.  nodesPerSecond() and lastDepth() tell you how the last
+//  search went, for tuning the budget on slower phones.
+//
+//  With an opening book set, the first person and house pieces are answered from the book
+//  straight away, as a single finished hint, without searching.
+//
+//  The listener is called on the search thread, so post anything that touches views back to
+//  the UI thread.  Only call start and cancel from one thread (normally the UI thread).
+//  The app doesn't ask for hints yet; the engine is here for a hint button to call.
+//
+
+public class WoodsyHintEngine {
+    public interface OnHintListener {
+        public void onHint(WoodsyHintEngine engine, Hint hint);
+    }
+
+    public static class Hint {
+        public int[] moves;             // the rest of this turn, in applyTurn's moves (a cell, or WoodsyGameData.MOVE_DISCARD); empty means end the turn
+        public int value;               // how good the line looks, in quarter points (see evaluate)
+        public int depth;               // how many moves ahead the search looked
+        public long nodes;              // positions looked at
+        public double nodesPerSecond;
+        public boolean finished;        // true for the last hint of a search
+
+        public int firstMove() {
+            // the move to suggest now, or -1 to end the turn.
+            return (this.moves.length > 0) ? this.moves[0] : -1;
+        }
+    }
+
+    private static final int MAX_PLY = 64;
+    private static final int TURN_END = WoodsyAI.STOP;      // in a line of moves, where the turn ends
+
+    private ExecutorService searchThread;       // made on the first start
+    private AtomicInteger generation = new AtomicInteger();     // bumped by every start and cancel
+    private long timeBudgetMillis = 5000;
+    private int maxDepth = 24;
+    private volatile int lastDepth = 0;
+    private volatile long lastNodes = 0;
+    private volatile double lastNodesPerSecond = 0;
+    private volatile WoodsyOpeningBook openingBook = null;
+
+    // The rest is only used by the thread searching.
+    private int searching;              // the generation being searched for
+    private boolean timeUp;
+    private long deadline;
+    private long nodes;
+    private boolean horizon;            // true if the search had to stop looking somewhere
+    private String participantId;
+    private int[][] actions = new int[MAX_PLY][WoodsyBoardData.CELLS + 2];
+    private int[][] line = new int[MAX_PLY][MAX_PLY];      // line[ply]: the best moves found from ply on
+    private int[] lineLength = new int[MAX_PLY];
+    private WoodsyReachability reachability = new WoodsyReachability();
+
+    //-- Settings
+    public void setTimeBudget(long millis) { this.timeBudgetMillis = millis; }
+    public void setMaxDepth(int depth) { this.maxDepth = Math.max(1, Math.min(depth, MAX_PLY - 1)); }
+    public void setOpeningBook(WoodsyOpeningBook book) { this.openingBook = book; }
+
+    //-- Statistics for the last search
+    public int lastDepth() { return this.lastDepth; }
+    public long lastNodes() { return this.lastNodes; }
+    public double nodesPerSecond() { return this.lastNodesPerSecond; }
+
+    public void start(WoodsyGameData game, final OnHintListener listener) {
+        // Starts looking for the best moves for the turn in progress in game, stopping any
+        // search already going.  The game is forked here, so carry on using it as normal.
+        final int mine = this.generation.incrementAndGet();
+        final WoodsyGameData position = game.fork();
+        final String participant = game.getCurrentParticipant();
+        if (participant == null) return;
+        if (this.searchThread == null) {
+            this.searchThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "WoodsyHintEngine");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);     // never slow down the UI
+                    return t;
+                }
+            });
+        }
+        this.searchThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                WoodsyHintEngine.this.think(position, participant, mine, WoodsyHintEngine.this.maxDepth,
+                        WoodsyHintEngine.this.timeBudgetMillis, listener);
+            }
+        });
+    }
+
+    public void cancel() {
+        // Stops the search, if there is one.  Doesn't wait, and no more hints are sent.
+        this.generation.incrementAndGet();
+    }
+
+    public void shutdown() {
+        // stops the search thread; the engine can't be used afterwards.
+        this.cancel();
+        if (this.searchThread != null) this.searchThread.shutdown();
+    }
+
+    Hint searchToDepth(WoodsyGameData game, int depth) {
+        // Searches game (which is changed and put back) to a fixed depth on the calling thread,
+        // with no time limit.  For benchmarks and tools; don't use it while start is searching.
+        return this.think(game, game.getCurrentParticipant(), this.generation.get(), depth, Long.MAX_VALUE / 2000000L, null);
+    }
+
+    //-- Searching
+    private Hint think(WoodsyGameData game, String participant, int mine, int depthLimit, long millis, OnHintListener listener) {
+        // Searches deeper and deeper until it is cancelled, runs out of time, or sees the end.
+        // Returns the last hint, or null if it didn't finish looking even one move ahead.
+        long start = System.nanoTime();
+        this.searching = mine;
+        this.timeUp = false;
+        this.deadline = start + millis * 1000000L;
+        this.nodes = 0;
+        this.participantId = participant;
+        Hint best = this.bookHint(game, start);
+        if (best != null) {
+            this.lastNodes = 0;
+            this.lastNodesPerSecond = 0;
+            if (listener != null && !this.stopped()) listener.onHint(this, best);
+            return best;
+        }
+        for (int depth = 1; depth <= depthLimit; depth++) {
+            this.horizon = false;
+            int value = this.search(game, 0, depth);
+            if (this.stopped()) break;
+            best = this.makeHint(value, depth, start, !this.horizon || depth == depthLimit);
+            if (listener != null && !this.stopped()) listener.onHint(this, best);
+            if (best.finished) break;
+        }
+        this.lastNodes = this.nodes;
+        this.lastNodesPerSecond = this.nodes * 1e9 / Math.max(1, System.nanoTime() - start);
+        if (best != null && !best.finished && this.generation.get() == mine) {
+            // out of time: the last depth finished is as good as it gets.
+            Hint last = new Hint();
+            last.moves = best.moves;
+            last.value = best.value;
+            last.depth = best.depth;
+            last.nodes = this.nodes;
+            last.nodesPerSecond = this.lastNodesPerSecond;
+            last.finished = true;
+            best = last;
+            if (listener != null) listener.onHint(this, best);
+        }
+        return best;
+    }
+
+    private Hint bookHint(WoodsyGameData game, long start) {
+        // The opening book's placements for as many of this turn's pieces as it knows, as a
+        // finished hint, or null if it doesn't know the first one.  game is put back as it was.
+        WoodsyOpeningBook book = this.openingBook;
+        if (book == null) return null;
+        int n = 0;
+        while (n < MAX_PLY && !game.movingPerson() && game.piecesLeftThisTurn()) {
+            int cell = book.suggest(game.getCurrentBoard(), game.getNextPiece());
+            if (cell < 0 || !WoodsyAI.applyAction(game, cell)) break;
+            this.line[0][n++] = cell;
+        }
+        if (n == 0) return null;
+        int value = this.evaluate(game);
+        for (int i = 0; i < n; i++) game.undoStep();
+        this.lineLength[0] = n;
+        return this.makeHint(value, 0, start, true);
+    }
+
+    private boolean stopped() {
+        return this.timeUp || this.generation.get() != this.searching;
+    }
+
+    private int search(WoodsyGameData game, int ply, int depth) {
+        // The best value that can be reached from here in depth moves, with the line that gets
+        // there in line[ply].  game is put back as it was.
+        this.lineLength[ply] = 0;
+        this.nodes++;
+        if ((this.nodes & 1023) == 0 && System.nanoTime() > this.deadline) this.timeUp = true;
+        if (this.stopped() || game.gameOver()) return this.evaluate(game);
+        if (depth == 0 || ply >= MAX_PLY - 1) {
+            this.horizon = true;
+            return this.evaluate(game);
+        }
+        int[] actions = this.actions[ply];
+        int n = WoodsyAI.listActions(game, actions);
+        if (n == 0) {
+            // the turn is over; all that's left is to end it
+            actions[0] = TURN_END;
+            n = 1;
+        }
+        int best = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int action = actions[i];
+            int value;
+            if (action == TURN_END) {
+                value = this.nextTurn(game, ply + 1, depth - 1);
+            } else {
+                if (!WoodsyAI.applyAction(game, action)) continue;
+                value = this.search(game, ply + 1, depth - 1);
+                game.undoStep();
+            }
+            if (this.stopped()) return best;
+            if (value > best) {
+                best = value;
+                this.line[ply][0] = action;
+                System.arraycopy(this.line[ply + 1], 0, this.line[ply], 1, this.lineLength[ply + 1]);
+                this.lineLength[ply] = this.lineLength[ply + 1] + 1;
+            }
+        }
+        return (best == Integer.MIN_VALUE) ? this.evaluate(game) : best;
+    }
+
+    private int nextTurn(WoodsyGameData game, int ply, int depth) {
+        // Ends the turn (on a fork, since ending a turn can't be taken back) and searches the
+        // participant's next one, as if nobody else had a turn in between (see the top).
+        WoodsyGameData next = game.fork();
+        next.endTurn();
+        this.lineLength[ply] = 0;
+        if (next.gameOver()) return this.evaluate(next);
+        next.beginTurn(this.participantId);
+        if (!next.piecesLeftThisTurn()) return this.evaluate(next);
+        return this.search(next, ply, depth);
+    }
+
+    int evaluate(WoodsyGameData game) {
+        // What a position is worth to the participant, in quarter points: their score, plus
+        // half the goal points of each person who could walk home along the roads already down.
+        WoodsyBoardData b = game.getCurrentBoard();
+        int value = 4 * game.getScore(this.participantId);
+        for (int n = 1; n <= Pieces.numberOfPeople(); n++) {
+            int at = b.personIndex(n);
+            if (at < 0 || at == b.houseIndex(n)) continue;
+            this.reachability.compute(b, at, WoodsyBoardData.CELLS);
+            if (this.reachability.houseReachable()) value += 2 * game.getGoalPoints(n);
+        }
+        return value;
+    }
+
+    private Hint makeHint(int value, int depth, long start, boolean finished) {
+        // the moves of the best line up to the end of this turn.
+        int n = 0;
+        while (n < this.lineLength[0] && this.line[0][n] != TURN_END) n++;
+        Hint hint = new Hint();
+        hint.moves = new int[n];
+        System.arraycopy(this.line[0], 0, hint.moves, 0, n);
+        hint.value = value;
+        hint.depth = depth;
+        hint.nodes = this.nodes;
+        hint.nodesPerSecond = this.nodes * 1e9 / Math.max(1, System.nanoTime() - start);
+        hint.finished = finished;
+        this.lastDepth = depth;
+        return hint;
+    }
+}
@@ -0,0 +1,175 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+//
+//  WoodsyMoveLog: keeps the whole history of one match in a local file, so that a game can be
+//  looked back over turn by turn (see WoodsyMoveLogReader).
+//
+//  The file is only ever added to.  It starts with a header, then a checkpoint of the game as
+//  it was when the log began, then one small binary record for everything done to the game:
+//    BEGIN_TURN   the participant id
+//    PLAY         the piece (varint) and the cell it was played on (byte)
+//    DISCARD      the piece (varint)
+//    UNDO, REDO, REWIND, END_TURN    nothing else
+//    CHECKPOINT   the number of turns so far (varint), then the whole game (WoodsyGameData.writeTo)
+//                 with its length (varint) in front
+//  A checkpoint is written after every checkpointInterval'th turn, so getting to any turn is a
+//  jump to the checkpoint before it and then at most that many turns played again.
+//
+//  Use the log's methods instead of the game's: each one makes the move on the game and, if it
+//  worked, records it.  Moves that fail aren't recorded, since playing them again would change
+//  nothing.  Records are kept in memory until the turn ends and then written out together, so a
+//  crash can only lose the turn in progress; open() drops any part of a turn it finds at the end.
+//
+
+public class WoodsyMoveLog {
+    public static final int MAGIC = 0x57576C67;     // "WWlg"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 16;
+    static final int HEADER_BYTES = 4 + 1 + 4;
+
+    // Record kinds, the first byte of each record.
+    static final int BEGIN_TURN = 1;
+    static final int PLAY = 2;
+    static final int DISCARD = 3;
+    static final int UNDO = 4;
+    static final int REDO = 5;
+    static final int REWIND = 6;
+    static final int END_TURN = 7;
+    static final int CHECKPOINT = 8;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private int checkpointInterval;
+    private int turns;          // turns ended so far
+    private ByteBuffer pending = ByteBuffer.allocate(1024);   // records not yet written out
+
+    private WoodsyMoveLog(RandomAccessFile file, int checkpointInterval, int turns) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.checkpointInterval = checkpointInterval;
+        this.turns = turns;
+    }
+
+    public static WoodsyMoveLog create(File f, WoodsyGameData game, int checkpointInterval) throws IOException {
+        // Starts a new log (replacing anything already in the file), with game as it is now as
+        // the first checkpoint.  game should be between turns.
+        RandomAccessFile file = new RandomAccessFile(f, "rw");
+        file.setLength(0);
+        WoodsyMoveLog log = new WoodsyMoveLog(file, Math.max(1, checkpointInterval), 0);
+        log.pending.putInt(MAGIC);
+        log.pending.put((byte) VERSION);
+        log.pending.putInt(log.checkpointInterval);
+        log.checkpoint(game);
+        log.flush();
+        return log;
+    }
+
+    public static WoodsyMoveLog open(File f) throws IOException {
+        // Carries on an existing log after its last complete turn.  To carry on the game too,
+        // take it from a WoodsyMoveLogReader at turns().
+        WoodsyMoveLogReader reader = new WoodsyMoveLogReader(f);
+        RandomAccessFile file = new RandomAccessFile(f, "rw");
+        WoodsyMoveLog log = new WoodsyMoveLog(file, reader.checkpointInterval(), reader.turns());
+        log.channel.truncate(reader.validLength());
+        log.channel.position(reader.validLength());
+        return log;
+    }
+
+    public int turns() { return this.turns; }
+
+    //-- Moves: each one makes the move on game and records it
+    public void beginTurn(WoodsyGameData game, String participantId) {
+        game.beginTurn(participantId);
+        this.reserve(1 + WoodsyCodec.stringSize(participantId));
+        this.pending.put((byte) BEGIN_TURN);
+        WoodsyCodec.putString(this.pending, participantId);
+    }
+
+    public int playPieceAt(WoodsyGameData game, int p, int x, int y) {
+        int result = game.playPieceAt(p, x, y);
+        if (!Pieces.isFailurePiece(result)) {
+            this.reserve(1 + 5 + 1);
+            this.pending.put((byte) PLAY);
+            WoodsyCodec.putVarint(this.pending, p);
+            this.pending.put((byte) WoodsyBoardData.indexOf(x, y));
+        }
+        return result;
+    }
+
+    public int playPieceDiscard(WoodsyGameData game, int p) {
+        int result = game.playPieceDiscard(p);
+        if (!Pieces.isFailurePiece(result)) {
+            this.reserve(1 + 5);
+            this.pending.put((byte) DISCARD);
+            WoodsyCodec.putVarint(this.pending, p);
+        }
+        return result;
+    }
+
+    public boolean undoStep(WoodsyGameData game) {
+        if (!game.undoStep()) return false;
+        this.record(UNDO);
+        return true;
+    }
+
+    public boolean redoStep(WoodsyGameData game) {
+        if (!game.redoStep()) return false;
+        this.record(REDO);
+        return true;
+    }
+
+    public void rewindTurn(WoodsyGameData game) {
+        game.rewindTurn();
+        this.record(REWIND);
+    }
+
+    public void endTurn(WoodsyGameData game) throws IOException {
+        // Ends the turn on game, and writes the turn (and a checkpoint, if one is due) to the file.
+        game.endTurn();
+        this.record(END_TURN);
+        this.turns++;
+        if (this.turns % this.checkpointInterval == 0) this.checkpoint(game);
+        this.flush();
+    }
+
+    public void close() throws IOException {
+        // Closes the file.  Anything from a turn that hasn't ended is not written.
+        this.file.close();
+    }
+
+    //-- Writing
+    private void record(int kind) {
+        this.reserve(1);
+        this.pending.put((byte) kind);
+    }
+
+    private void checkpoint(WoodsyGameData game) {
+        int size = game.encodedSize();
+        this.reserve(1 + 5 + 5 + size);
+        this.pending.put((byte) CHECKPOINT);
+        WoodsyCodec.putVarint(this.pending, this.turns);
+        WoodsyCodec.putVarint(this.pending, size);
+        game.writeTo(this.pending);
+    }
+
+    private void reserve(int bytes) {
+        // makes sure pending has room for another bytes.
+        if (this.pending.remaining() >= bytes) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(this.pending.capacity() * 2, this.pending.position() + bytes));
+        this.pending.flip();
+        bigger.put(this.pending);
+        this.pending = bigger;
+    }
+
+    private void flush() throws IOException {
+        this.pending.flip();
+        while (this.pending.hasRemaining()) this.channel.write(this.pending);
+        this.pending.clear();
+    }
+}
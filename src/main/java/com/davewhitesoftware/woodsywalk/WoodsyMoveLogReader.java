@@ -0,0 +1,139 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+//
+//  WoodsyMoveLogReader: reads a match history written by WoodsyMoveLog, and gives back the game
+//  as it stood after any turn.
+//
+//  The file is memory-mapped, so opening it reads nothing up front except one pass over the
+//  records to find where each turn ends and where the checkpoints are; the operating system
+//  pages the rest in as it is needed.  gameAt(turn) then starts from the last checkpoint at or
+//  before that turn and plays the turns after it again.  The file can be closed as soon as it
+//  is mapped, so a reader holds no file open, and a list of saved games can keep a reader for
+//  each one.
+//
+//  If the log ends part way through a turn (the app was killed while writing), the reader
+//  stops at the last complete turn.  Once made, a reader doesn't change, so gameAt can be
+//  called from several threads at once.
+//
+
+public class WoodsyMoveLogReader {
+    private MappedByteBuffer map;
+    private int checkpointInterval;
+    private int turns;                      // complete turns in the log
+    private int validLength;                // bytes up to the end of the last complete turn
+    private int[] checkpointTurns = new int[8];
+    private int[] checkpointOffsets = new int[8];   // where each checkpoint's game starts
+    private int checkpoints;
+
+    public WoodsyMoveLogReader(File f) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try {
+            this.map = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();   // the mapping stays valid without the file
+        }
+        ByteBuffer in = this.map.duplicate();
+        if (in.remaining() < WoodsyMoveLog.HEADER_BYTES || in.getInt() != WoodsyMoveLog.MAGIC)
+            throw new IOException("not a Woodsy Walk move log: " + f);
+        int version = in.get() & 0xFF;
+        if (version != WoodsyMoveLog.VERSION) throw new IOException("unknown move log version " + version);
+        this.checkpointInterval = in.getInt();
+        this.index(in);
+        if (this.checkpoints == 0) throw new IOException("move log has no starting checkpoint: " + f);
+    }
+
+    private void index(ByteBuffer in) {
+        // One pass over the records, noting the checkpoints and counting the turns.
+        int turns = 0;
+        this.validLength = in.position();
+        try {
+            while (in.hasRemaining()) {
+                int kind = in.get();
+                switch (kind) {
+                    case WoodsyMoveLog.BEGIN_TURN: WoodsyCodec.getString(in); break;
+                    case WoodsyMoveLog.PLAY: WoodsyCodec.getVarint(in); in.get(); break;
+                    case WoodsyMoveLog.DISCARD: WoodsyCodec.getVarint(in); break;
+                    case WoodsyMoveLog.UNDO: case WoodsyMoveLog.REDO: case WoodsyMoveLog.REWIND: break;
+                    case WoodsyMoveLog.END_TURN:
+                        turns++;
+                        this.turns = turns;
+                        this.validLength = in.position();
+                        break;
+                    case WoodsyMoveLog.CHECKPOINT:
+                        int turn = WoodsyCodec.getVarint(in);
+                        int size = WoodsyCodec.getVarint(in);
+                        if (turn != turns || size < 0 || size > in.remaining()) return;
+                        this.addCheckpoint(turn, in.position());
+                        in.position(in.position() + size);
+                        this.validLength = in.position();
+                        break;
+                    default:
+                        return;     // garbage: treat it as the end
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // a record cut off at the end of the file
+        } catch (IllegalArgumentException e) {
+            // a bad length or varint in a record cut off at the end of the file
+        }
+    }
+
+    private void addCheckpoint(int turn, int offset) {
+        if (this.checkpoints == this.checkpointTurns.length) {
+            this.checkpointTurns = Arrays.copyOf(this.checkpointTurns, this.checkpoints * 2);
+            this.checkpointOffsets = Arrays.copyOf(this.checkpointOffsets, this.checkpoints * 2);
+        }
+        this.checkpointTurns[this.checkpoints] = turn;
+        this.checkpointOffsets[this.checkpoints] = offset;
+        this.checkpoints++;
+    }
+
+    public int turns() { return this.turns; }
+    public int checkpointInterval() { return this.checkpointInterval; }
+    int validLength() { return this.validLength; }
+
+    public WoodsyGameData gameAt(int turn) {
+        // The game as it stood after the given number of turns (0 is the start of the log).
+        if (turn < 0 || turn > this.turns) throw new IndexOutOfBoundsException("turn " + turn + " of " + this.turns);
+        // the last checkpoint at or before the turn
+        int c = Arrays.binarySearch(this.checkpointTurns, 0, this.checkpoints, turn);
+        if (c < 0) c = -c - 2;
+        ByteBuffer in = this.map.duplicate();
+        in.position(this.checkpointOffsets[c]);
+        WoodsyGameData game = WoodsyGameData.readFrom(in);
+        int at = this.checkpointTurns[c];
+        // and the turns after it
+        while (at < turn) {
+            int kind = in.get();
+            switch (kind) {
+                case WoodsyMoveLog.BEGIN_TURN: game.beginTurn(WoodsyCodec.getString(in)); break;
+                case WoodsyMoveLog.PLAY:
+                    int p = WoodsyCodec.getVarint(in);
+                    int index = in.get() & 0xFF;
+                    game.playPieceAt(p, WoodsyBoardData.xOf(index), WoodsyBoardData.yOf(index));
+                    break;
+                case WoodsyMoveLog.DISCARD: game.playPieceDiscard(WoodsyCodec.getVarint(in)); break;
+                case WoodsyMoveLog.UNDO: game.undoStep(); break;
+                case WoodsyMoveLog.REDO: game.redoStep(); break;
+                case WoodsyMoveLog.REWIND: game.rewindTurn(); break;
+                case WoodsyMoveLog.END_TURN: game.endTurn(); at++; break;
+                case WoodsyMoveLog.CHECKPOINT:
+                    WoodsyCodec.getVarint(in);
+                    int size = WoodsyCodec.getVarint(in);
+                    in.position(in.position() + size);
+                    break;
+                default: throw new IllegalStateException("bad move log record " + kind);
+            }
+        }
+        return game;
+    }
+}
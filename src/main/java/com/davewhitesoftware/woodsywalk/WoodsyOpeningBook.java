@@ -0,0 +1,189 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.BufferedOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//
+//  WoodsyOpeningBook: where to put the first people and houses, looked up instead of worked out.
+//
+//  A game starts with each player putting person and house pairs on the grass around the edge
+//  of an empty board, and where they go shapes the rest of the game.  The book is made ahead of
+//  time by a tool (WoodsyOpeningBookBuilder) that plays out every choice many times.  For each
+//  opening position -- an empty board, or a board with one pair on it -- it keeps the best few
+//  places for the next pair, best first, each as (person cell, house cell, average final score).
+//
+//  The board looks the same flipped left to right or top to bottom, and the colors are all worth
+//  the same, so a position is stored once for all its mirror images (the one whose key is
+//  smallest), and a lookup flips the answer back.
+//
+//  File format (big-endian): magic "WWbk", version byte, entry count (int), moves per entry
+//  (byte), then the entries sorted by key, all the same size: key (short), number of moves
+//  (byte), and for each move person cell (byte), house cell (byte), score in hundredths of a
+//  point (short).  The file is memory-mapped and found by binary search, so opening it reads
+//  nothing and a lookup touches a page or two.  A book doesn't change once opened, so it can be
+//  used from several threads at once.
+//
+
+public class WoodsyOpeningBook {
+    static final int MAGIC = 0x5757626B;    // "WWbk"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 10;
+    static final int EMPTY_BOARD = 0;       // the key for a board with nothing on it yet
+    static final int SYMMETRIES = 4;        // as it is, flipped left to right, top to bottom, and both
+
+    private MappedByteBuffer map;
+    private int entries;
+    private int movesPerEntry;
+    private int entryBytes;
+
+    public WoodsyOpeningBook(File f) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try {
+            this.map = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();   // the mapping stays valid without the file
+        }
+        if (this.map.limit() < HEADER_BYTES || this.map.getInt(0) != MAGIC) throw new IOException("not a Woodsy Walk opening book: " + f);
+        int version = this.map.get(4) & 0xFF;
+        if (version != VERSION) throw new IOException("unknown opening book version " + version);
+        this.entries = this.map.getInt(5);
+        this.movesPerEntry = this.map.get(9) & 0xFF;
+        this.entryBytes = 3 + 4 * this.movesPerEntry;
+        if (this.entries < 0 || HEADER_BYTES + (long) this.entries * this.entryBytes > this.map.limit())
+            throw new IOException("opening book is cut short: " + f);
+    }
+
+    public int entries() { return this.entries; }
+
+    //-- Keys and mirror images
+    static int pairKey(int person, int house) {
+        // the key for a board with one pair on it.
+        return 1 + person * WoodsyBoardData.CELLS + house;
+    }
+
+    static int flip(int cell, int symmetry) {
+        // a cell's mirror image: bit 0 of symmetry flips left to right, bit 1 top to bottom.
+        // Every flip is its own undoing.
+        int x = WoodsyBoardData.xOf(cell), y = WoodsyBoardData.yOf(cell);
+        if ((symmetry & 1) != 0) x = WoodsyBoardData.WIDTH - 1 - x;
+        if ((symmetry & 2) != 0) y = WoodsyBoardData.HEIGHT - 1 - y;
+        return WoodsyBoardData.indexOf(x, y);
+    }
+
+    static int flipKey(int key, int symmetry) {
+        if (key == EMPTY_BOARD) return key;
+        int person = (key - 1) / WoodsyBoardData.CELLS, house = (key - 1) % WoodsyBoardData.CELLS;
+        return WoodsyOpeningBook.pairKey(WoodsyOpeningBook.flip(person, symmetry), WoodsyOpeningBook.flip(house, symmetry));
+    }
+
+    static int canonicalKey(int key) {
+        // the key of whichever mirror image has the smallest key.
+        int best = key;
+        for (int s = 1; s < SYMMETRIES; s++) best = Math.min(best, WoodsyOpeningBook.flipKey(key, s));
+        return best;
+    }
+
+    static int positionKey(WoodsyBoardData b, int color) {
+        // The key for the position b is in, not counting color's person or house, or -1 if it
+        // isn't an opening position (more than one other pair, or half a pair).
+        int key = EMPTY_BOARD;
+        for (int n = 1; n <= Pieces.numberOfPeople(); n++) {
+            if (n == color) continue;
+            int person = b.personIndex(n), house = b.houseIndex(n);
+            if (person < 0 && house < 0) continue;
+            if (person < 0 || house < 0 || key != EMPTY_BOARD) return -1;
+            key = WoodsyOpeningBook.pairKey(person, house);
+        }
+        return key;
+    }
+
+    //-- Looking things up
+    public int suggest(WoodsyBoardData b, int p) {
+        // The cell the book says to put person or house piece p on, or -1 if the book doesn't
+        // know (not an opening position, or for a house, not a person placing it has seen).
+        boolean person = Pieces.isPerson(p);
+        if (!person && !Pieces.isHouse(p)) return -1;
+        int color = person ? Pieces.personNumber(p) : Pieces.houseNumber(p);
+        int key = WoodsyOpeningBook.positionKey(b, color);
+        if (key < 0) return -1;
+        int entry = this.find(WoodsyOpeningBook.canonicalKey(key));
+        if (entry < 0) return -1;
+        long legal = WoodsyRules.placePersonOrHouseTargets(b, p);
+        int partner = person ? b.houseIndex(color) : b.personIndex(color);
+        if (person && partner >= 0) return -1;
+        int moves = this.map.get(entry + 2) & 0xFF;
+        // the best move, seen through whichever mirror images turn the book's position into b's
+        for (int i = 0; i < moves; i++) {
+            int o = entry + 3 + 4 * i;
+            int bookPerson = this.map.get(o) & 0xFF, bookHouse = this.map.get(o + 1) & 0xFF;
+            for (int s = 0; s < SYMMETRIES; s++) {
+                if (WoodsyOpeningBook.flipKey(key, s) != WoodsyOpeningBook.canonicalKey(key)) continue;
+                int cell;
+                if (person) {
+                    cell = WoodsyOpeningBook.flip(bookPerson, s);
+                } else {
+                    if (WoodsyOpeningBook.flip(partner, s) != bookPerson) continue;
+                    cell = WoodsyOpeningBook.flip(bookHouse, s);
+                }
+                if ((legal & (1L << cell)) != 0) return cell;
+            }
+        }
+        return -1;
+    }
+
+    public double score(WoodsyBoardData b) {
+        // the average final score the book expects from the best next pair here, or NaN if it
+        // isn't in the book.
+        int key = WoodsyOpeningBook.positionKey(b, 0);
+        int entry = (key < 0) ? -1 : this.find(WoodsyOpeningBook.canonicalKey(key));
+        if (entry < 0 || (this.map.get(entry + 2) & 0xFF) == 0) return Double.NaN;
+        return this.map.getShort(entry + 5) / 100.0;
+    }
+
+    private int find(int key) {
+        // the offset of the entry for a canonical key, or -1.
+        int lo = 0, hi = this.entries - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int offset = HEADER_BYTES + mid * this.entryBytes;
+            int k = this.map.getShort(offset) & 0xFFFF;
+            if (k < key) lo = mid + 1;
+            else if (k > key) hi = mid - 1;
+            else return offset;
+        }
+        return -1;
+    }
+
+    //-- Writing
+    public static void write(File f, int[] keys, int[][] persons, int[][] houses, int[][] scores, int movesPerEntry) throws IOException {
+        // Writes a book.  keys must be canonical and in increasing order; for entry i the moves
+        // are persons[i][j], houses[i][j] with scores[i][j] in hundredths of a point, best first.
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).put((byte) VERSION).putInt(keys.length).put((byte) movesPerEntry);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+        try {
+            out.write(header.array());
+            for (int i = 0; i < keys.length; i++) {
+                if (i > 0 && keys[i] <= keys[i - 1]) throw new IllegalArgumentException("opening book keys out of order");
+                int moves = Math.min(movesPerEntry, persons[i].length);
+                out.writeShort(keys[i]);
+                out.writeByte(moves);
+                for (int j = 0; j < movesPerEntry; j++) {
+                    boolean used = j < moves;
+                    out.writeByte(used ? persons[i][j] : 0);
+                    out.writeByte(used ? houses[i][j] : 0);
+                    out.writeShort(used ? Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scores[i][j])) : 0);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
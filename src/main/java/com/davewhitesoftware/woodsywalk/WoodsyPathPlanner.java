@@ -0,0 +1,201 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.util.Arrays;
+
+//
+//  WoodsyPathPlanner: finds the best walk for a moving person, so the player can walk them
+//  with one tap instead of tapping every step.
+//
+//  A walk earns the coins on each cell it steps into (the first time only, since stepping in
+//  takes them) and the goal points if it reaches the person's house, where it ends.  The best
+//  walk is found by trying every road-connected path within the moves left, remembering the
+//  best way on from each (cell, moves left, coins already taken) so that paths which meet
+//  again aren't worked out twice.  The coins already taken are a bitmask over the coins in
+//  reach.  Where going on earns nothing more, the walk stops, so a walk worth nothing is no
+//  walk at all.
+//
+//  One object is meant to be reused for every plan: its table is kept and just marked empty,
+//  so planning allocates nothing once the table is big enough.
+//
+
+public class WoodsyPathPlanner {
+    private static final int MAX_PATH = 4;          // Pieces.numberMoves counts the roads on a tile, so at most 4
+
+    // The walk being planned
+    private long joinsRight, joinsDown;
+    private long allowed;                           // cells the person may step into
+    private long home;                              // the person's house, where the walk ends
+    private int goalPoints;
+    private int[] coinBit = new int[WoodsyBoardData.CELLS];        // each cell's bit in the coins-taken mask, or -1
+    private int[] coinPoints = new int[WoodsyBoardData.CELLS];
+    private WoodsyReachability reachability = new WoodsyReachability();
+
+    // The table of best ways on: key (coins taken, moves left, cell) -> (points << 8) | (next cell + 1), 0 to stop
+    private long[] keys = new long[1024];
+    private int[] values = new int[1024];
+    private int[] stamps = new int[1024];           // an entry is only in use if its stamp is the current one
+    private int stamp = 0;
+    private int entries = 0;
+
+    // The result
+    private int[] path = new int[MAX_PATH];
+    private int pathLength = 0;
+    private int points = 0;
+
+    public int points() { return this.points; }
+    public int pathLength() { return this.pathLength; }
+    public int step(int i) { return this.path[i]; }
+    public int states() { return this.entries; }
+
+    public int[] path() {
+        // the cells to step into, in order.
+        int[] p = new int[this.pathLength];
+        System.arraycopy(this.path, 0, p, 0, this.pathLength);
+        return p;
+    }
+
+    public int plan(WoodsyGameData game) {
+        // Plans the walk for the person moving in game's turn in progress.  Returns the points
+        // it earns; the steps are in path().  Nothing is planned if nobody is moving.
+        int start = game.movingPersonCell();
+        if (start < 0) return this.plan(null, -1, 0, 0, 0, 0);
+        WoodsyBoardData b = game.getCurrentBoard();
+        int personNumber = Pieces.personNumber(b.getCellAt(start));
+        return this.plan(b, start, game.movingPersonMovesLeft(), game.getGoalPoints(personNumber),
+                game.pointsForSilver(), game.pointsForGold());
+    }
+
+    public int plan(WoodsyBoardData b, int start, int moves, int goalPoints, int pointsForSilver, int pointsForGold) {
+        // Plans the walk for the person standing on cell start, with the given number of moves.
+        this.pathLength = 0;
+        this.points = 0;
+        this.entries = 0;
+        if (b == null || start < 0 || moves <= 0) return 0;
+        int personNumber = Pieces.personNumber(b.getCellAt(start));
+        if (personNumber == 0 || b.houseIndex(personNumber) == start) return 0;
+        moves = Math.min(moves, MAX_PATH);
+        this.joinsRight = b.joinsRight();
+        this.joinsDown = b.joinsDown();
+        this.home = b.houses(personNumber);
+        this.allowed = (WoodsyBoardData.INTERIOR_MASK | this.home) & ~(b.anyPerson() & ~(1L << start));
+        this.goalPoints = goalPoints;
+        // number the coins the person could get to; the rest don't matter
+        this.reachability.compute(b, start, moves);
+        long inReach = this.reachability.reachable() | (1L << start);
+        long silver = b.silverCoins(), gold = b.goldCoins();
+        int bit = 0;
+        Arrays.fill(this.coinBit, -1);
+        for (long cells = inReach; cells != 0; cells &= cells - 1) {
+            int c = Long.numberOfTrailingZeros(cells);
+            long m = 1L << c;
+            this.coinPoints[c] = ((silver & m) != 0 ? pointsForSilver : 0) + ((gold & m) != 0 ? pointsForGold : 0);
+            this.coinBit[c] = (this.coinPoints[c] > 0) ? bit++ : -1;
+        }
+        this.newTable();
+        // follow the best way on from the start
+        int cell = start;
+        long taken = 0;
+        for (int left = moves; left > 0; left--) {
+            int next = (this.best(cell, left, taken) & 0xFF) - 1;
+            if (next < 0) break;
+            this.path[this.pathLength++] = next;
+            this.points += this.gain(next, taken);
+            if (this.coinBit[next] >= 0) taken |= 1L << this.coinBit[next];
+            if ((this.home & (1L << next)) != 0) {
+                this.points += this.goalPoints;
+                break;
+            }
+            cell = next;
+        }
+        return this.points;
+    }
+
+    public int autoWalk(WoodsyGameData game) {
+        // Plans the walk for the moving person and takes it, one undoable step at a time.
+        // Returns the number of steps taken.
+        this.plan(game);
+        int steps = 0;
+        for (int i = 0; i < this.pathLength; i++) {
+            int p = game.getNextPiece();
+            int c = this.path[i];
+            if (Pieces.isFailurePiece(game.playPieceAt(p, WoodsyBoardData.xOf(c), WoodsyBoardData.yOf(c)))) break;
+            steps++;
+        }
+        return steps;
+    }
+
+    //-- Planning
+    private int gain(int cell, long taken) {
+        // the coins to be had by stepping into cell.
+        int bit = this.coinBit[cell];
+        return (bit >= 0 && (taken & (1L << bit)) == 0) ? this.coinPoints[cell] : 0;
+    }
+
+    private int best(int cell, int left, long taken) {
+        // The best way on from cell with left moves and the coins in taken gone, packed as
+        // (points << 8) | (next cell + 1), or (points << 8) to stop here.
+        if (left == 0) return 0;
+        long key = (taken << 10) | ((long) left << 6) | cell;
+        int slot = this.find(key);
+        if (this.stamps[slot] == this.stamp) return this.values[slot];
+        int result = 0;
+        long f = 1L << cell;
+        long steps = ((f & this.joinsRight) << 1) | ((f >>> 1) & this.joinsRight)
+                | ((f & this.joinsDown) << WoodsyBoardData.WIDTH) | ((f >>> WoodsyBoardData.WIDTH) & this.joinsDown);
+        for (steps &= this.allowed; steps != 0; steps &= steps - 1) {
+            int c = Long.numberOfTrailingZeros(steps);
+            int value = this.gain(c, taken);
+            if ((this.home & (1L << c)) != 0) {
+                value += this.goalPoints;
+            } else {
+                long now = (this.coinBit[c] >= 0) ? taken | (1L << this.coinBit[c]) : taken;
+                value += this.best(c, left - 1, now) >> 8;
+            }
+            if (value > (result >> 8)) result = (value << 8) | (c + 1);
+        }
+        this.store(key, result);
+        return result;
+    }
+
+    //-- The table
+    private void newTable() {
+        // empties the table without touching it, by moving on to a new stamp.
+        this.entries = 0;
+        if (++this.stamp == 0) {
+            Arrays.fill(this.stamps, 0);
+            this.stamp = 1;
+        }
+    }
+
+    private int find(long key) {
+        // the slot holding key, or the empty slot where it would go.
+        int mask = this.keys.length - 1;
+        int slot = (int) WoodsyHash.mix(key) & mask;
+        while (this.stamps[slot] == this.stamp && this.keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void store(long key, int value) {
+        if ((this.entries + 1) * 4 > this.keys.length * 3) this.grow();
+        int slot = this.find(key);
+        if (this.stamps[slot] != this.stamp) this.entries++;
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.stamps[slot] = this.stamp;
+    }
+
+    private void grow() {
+        // doubles the table, keeping what's in it.
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        int[] oldStamps = this.stamps;
+        int oldStamp = this.stamp;
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new int[oldKeys.length * 2];
+        this.stamps = new int[oldKeys.length * 2];
+        this.stamp = 1;
+        this.entries = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldStamps[i] == oldStamp) this.store(oldKeys[i], oldValues[i]);
+    }
+}
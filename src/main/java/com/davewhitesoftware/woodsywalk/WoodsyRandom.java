@@ -0,0 +1,50 @@
+package com.davewhitesoftware.woodsywalk;
+
+//
+//  WoodsyRandom: a small, fast random number generator (SplitMix64) for the game's own use.
+//
+//  Unlike java.util.Random it has no locking, so each thread can have its own, and split()
+//  hands out a new generator whose numbers are independent of this one's.  The same seed always
+//  gives the same numbers, on any device.
+//
+
+public class WoodsyRandom {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private long seed;
+    private long gamma;     // the step between seeds; always odd
+
+    public WoodsyRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private WoodsyRandom(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    public long nextLong() {
+        this.seed += this.gamma;
+        return WoodsyHash.mix(this.seed);
+    }
+
+    public int nextInt(int bound) {
+        // a number from 0 to bound-1 (bound must be positive).
+        return (int) (((this.nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    public boolean nextBoolean() {
+        return this.nextLong() < 0;
+    }
+
+    public int nextBit(long mask) {
+        // picks one of the set bits of mask at random and returns its number, or -1 if mask is 0.
+        if (mask == 0) return -1;
+        for (int k = this.nextInt(Long.bitCount(mask)); k > 0; k--) mask &= mask - 1;
+        return Long.numberOfTrailingZeros(mask);
+    }
+
+    public WoodsyRandom split() {
+        // a new generator, independent of this one, for handing to another thread.
+        return new WoodsyRandom(this.nextLong(), WoodsyHash.mix(this.nextLong()) | 1L);
+    }
+}
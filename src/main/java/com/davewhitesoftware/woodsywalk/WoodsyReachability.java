@@ -0,0 +1,90 @@
+package com.davewhitesoftware.woodsywalk;
+
+//
+//  WoodsyReachability: works out everywhere a walking person can get to with the moves they
+//  have left, how many steps each of those cells takes, and whether their house is in reach.
+//
+//  It is a breadth-first search, but done a whole ring at a time on bitplanes: each step takes
+//  the cells reached so far, shifts them one cell in each direction along the roads that join
+//  (see WoodsyBoardData.joinsRight/joinsDown), and keeps the ones the person is allowed to enter.
+//  One object is meant to be reused for every query, so asking allocates nothing.
+//
+//  A person can step into a cell that has no other person in it, and can only step onto the
+//  edge if that cell holds their own house.  Once they get home they stay there.
+//
+
+public class WoodsyReachability {
+    private long[] rings = new long[WoodsyBoardData.CELLS + 1];  // rings[n] = cells first reached on step n
+    private int lastRing = 0;
+    private long reachable = 0;
+    private int house = -1;         // cell index of the person's house, or -1
+
+    public void compute(WoodsyBoardData b, int start, int moves) {
+        // Compute reachability for the person standing on cell start with the given number of moves.
+        // If there is no person on the start cell, nothing is reachable.
+        this.reachable = 0;
+        this.lastRing = 0;
+        this.house = -1;
+        if (start < 0 || start >= WoodsyBoardData.CELLS) return;
+        int personNumber = Pieces.personNumber(b.getCellAt(start));
+        if (personNumber == 0) return;
+        this.house = b.houseIndex(personNumber);
+        long home = b.houses(personNumber);
+        long allowed = (WoodsyBoardData.INTERIOR_MASK | home) & ~b.anyPerson();
+        long joinsRight = b.joinsRight();
+        long joinsDown = b.joinsDown();
+        long visited = 1L << start;
+        long frontier = visited & ~home;     // someone already home doesn't go anywhere
+        this.rings[0] = visited;
+        if (moves > WoodsyBoardData.CELLS) moves = WoodsyBoardData.CELLS;
+        for (int step = 1; step <= moves && frontier != 0; step++) {
+            long next = ((frontier & joinsRight) << 1) | ((frontier >>> 1) & joinsRight)
+                    | ((frontier & joinsDown) << WoodsyBoardData.WIDTH) | ((frontier >>> WoodsyBoardData.WIDTH) & joinsDown);
+            next &= allowed & ~visited;
+            if (next == 0) break;
+            this.rings[step] = next;
+            this.lastRing = step;
+            visited |= next;
+            frontier = next & ~home;
+        }
+        this.reachable = visited & ~(1L << start);
+    }
+
+    public long reachable() {
+        // cells the person can end up on (one bit per cell index), not counting where they started.
+        return this.reachable;
+    }
+
+    public boolean canReach(int index) {
+        return index >= 0 && index < WoodsyBoardData.CELLS && (this.reachable & (1L << index)) != 0;
+    }
+
+    public int stepsTo(int index) {
+        // the fewest steps it takes to get to a cell, 0 for the starting cell, or -1 if it can't be reached.
+        if (index < 0 || index >= WoodsyBoardData.CELLS) return -1;
+        long bit = 1L << index;
+        for (int step = 0; step <= this.lastRing; step++)
+            if ((this.rings[step] & bit) != 0) return step;
+        return -1;
+    }
+
+    public int maxSteps() {
+        // the number of steps to the farthest reachable cell.
+        return this.lastRing;
+    }
+
+    public long ring(int step) {
+        // the cells first reached after exactly this many steps.
+        if (step < 0 || step > this.lastRing) return 0;
+        return this.rings[step];
+    }
+
+    public boolean houseReachable() {
+        // true if the person can get home with the moves they have.
+        return this.canReach(this.house);
+    }
+
+    public int stepsToHouse() {
+        return this.houseReachable() ? this.stepsTo(this.house) : -1;
+    }
+}
@@ -0,0 +1,43 @@
+package com.davewhitesoftware.woodsywalk;
+
+import android.content.Context;
+
+//
+//  WoodsyRuleMessages: turns the result codes from WoodsyRules into messages for the player.
+//  This is the only part of the rules that needs Android, so it is kept apart from them and
+//  only used when there is something to show.
+//
+
+public class WoodsyRuleMessages {
+    private static final int[] MESSAGES = new int[WoodsyRules.NUMBER_OF_RESULTS];
+    static {
+        MESSAGES[WoodsyRules.OK] = 0;
+        MESSAGES[WoodsyRules.TURN_FINISHED] = R.string.turn_finished;
+        MESSAGES[WoodsyRules.ALL_MOVES_FINISHED] = R.string.all_moves_finished;
+        MESSAGES[WoodsyRules.INVALID_COORDS] = R.string.invalid_coords;
+        MESSAGES[WoodsyRules.PEOPLE_AND_HOUSES_EDGE_ONLY] = R.string.people_and_houses_edge_only;
+        MESSAGES[WoodsyRules.HOUSE_PERSON_TOO_CLOSE] = R.string.house_person_too_close;
+        MESSAGES[WoodsyRules.HOUSES_AND_PEOPLE_ONLY_ON_GREEN_GRASS] = R.string.houses_and_people_only_on_green_grass;
+        MESSAGES[WoodsyRules.UNEXPECTED_PROBLEM] = R.string.unexpected_problem;
+        MESSAGES[WoodsyRules.PERSON_HAS_NO_PATH] = R.string.person_has_no_path;
+        MESSAGES[WoodsyRules.PERSON_ON_EDGE_CAN_ONLY_GO_TO_THEIR_HOUSE] = R.string.person_on_edge_can_only_go_to_their_house;
+        MESSAGES[WoodsyRules.CANT_DISCARD_MOVING_PERSON] = R.string.cant_discard_moving_person;
+        MESSAGES[WoodsyRules.CANT_DISCARD_HOUSE] = R.string.cant_discard_house;
+        MESSAGES[WoodsyRules.CANT_DISCARD_PERSON] = R.string.cant_discard_person;
+        MESSAGES[WoodsyRules.CANT_PLAY_PATH_PIECE_ON_EDGE] = R.string.cant_play_path_piece_on_edge;
+        MESSAGES[WoodsyRules.CANT_MOVE_THERE] = R.string.cant_move_there;
+        MESSAGES[WoodsyRules.ONLY_ONE_PERSON_IN_SQUARE_AT_TIME] = R.string.only_one_person_in_square_at_time;
+    }
+
+    public static int getStringId(int result) {
+        // the string resource for a result code, or 0 for OK (which has no message).
+        if (result <= 0 || result >= MESSAGES.length) return (result == WoodsyRules.OK) ? 0 : R.string.unexpected_problem;
+        return MESSAGES[result];
+    }
+
+    public static String getMessage(Context ctx, int result) {
+        // the message for a result code, or "" for OK.
+        int id = WoodsyRuleMessages.getStringId(result);
+        return (id == 0) ? "" : ctx.getString(id);
+    }
+}
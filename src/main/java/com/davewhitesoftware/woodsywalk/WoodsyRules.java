@@ -0,0 +1,124 @@
+package com.davewhitesoftware.woodsywalk;
+
+//
+//  WoodsyRules: An object with only static methods (so don't instantiate it, no need)
+//  that decides whether a move is allowed.  Each check returns OK or one of the result codes
+//  below, one per rule, and never touches Android-- so the rules run anywhere, and a rejected
+//  move costs nothing but an int.  The app turns a code into a message for the player with
+//  WoodsyRuleMessages.
+//
+//  The checks only look at the board; WoodsyGameData keeps track of whose turn it is and which
+//  piece is being played, and applies the move if the check passes.
+//
+//  Each check also has a whole-board version that returns a bitmask of every cell the check
+//  would pass for (bit N = cell index N), built from the board's bitplanes rather than by
+//  trying each cell.
+//
+
+public class WoodsyRules {
+    // Result codes.
+    public static final int OK = 0;
+    public static final int TURN_FINISHED = 1;
+    public static final int ALL_MOVES_FINISHED = 2;
+    public static final int INVALID_COORDS = 3;
+    public static final int PEOPLE_AND_HOUSES_EDGE_ONLY = 4;
+    public static final int HOUSE_PERSON_TOO_CLOSE = 5;
+    public static final int HOUSES_AND_PEOPLE_ONLY_ON_GREEN_GRASS = 6;
+    public static final int UNEXPECTED_PROBLEM = 7;
+    public static final int PERSON_HAS_NO_PATH = 8;
+    public static final int PERSON_ON_EDGE_CAN_ONLY_GO_TO_THEIR_HOUSE = 9;
+    public static final int CANT_DISCARD_MOVING_PERSON = 10;
+    public static final int CANT_DISCARD_HOUSE = 11;
+    public static final int CANT_DISCARD_PERSON = 12;
+    public static final int CANT_PLAY_PATH_PIECE_ON_EDGE = 13;
+    public static final int CANT_MOVE_THERE = 14;
+    public static final int ONLY_ONE_PERSON_IN_SQUARE_AT_TIME = 15;
+    public static final int NUMBER_OF_RESULTS = 16;
+
+    // A person and house of the same color have to be at least this far apart.
+    public static final int MIN_PARTNER_DISTANCE = 5;
+
+    // FAR_FROM[n] = the cells at least MIN_PARTNER_DISTANCE away from cell n.
+    private static final long[] FAR_FROM = new long[WoodsyBoardData.CELLS];
+    static {
+        for (int a = 0; a < WoodsyBoardData.CELLS; a++)
+            for (int b = 0; b < WoodsyBoardData.CELLS; b++)
+                if (WoodsyBoardData.distance(a, b) >= MIN_PARTNER_DISTANCE) FAR_FROM[a] |= (1L << b);
+    }
+
+    public static boolean isValidIndex(int index) {
+        return index >= 0 && index < WoodsyBoardData.CELLS;
+    }
+
+    public static int checkPlacePersonOrHouse(WoodsyBoardData b, int p, int index) {
+        // Placing a plain person or house piece: it goes on an empty green grass cell on the
+        // edge, far enough from its partner.
+        if (!WoodsyRules.isValidIndex(index)) return INVALID_COORDS;
+        if (!WoodsyBoardData.isEdgeIndex(index)) return PEOPLE_AND_HOUSES_EDGE_ONLY;
+        if (b.distanceToPartner(p, index) < MIN_PARTNER_DISTANCE) return HOUSE_PERSON_TOO_CLOSE;
+        if (!Pieces.isGreenGrassPiece(b.getCellAt(index))) return HOUSES_AND_PEOPLE_ONLY_ON_GREEN_GRASS;
+        return OK;
+    }
+
+    public static long placePersonOrHouseTargets(WoodsyBoardData b, int p) {
+        // Every cell checkPlacePersonOrHouse would allow.
+        int partner;
+        if (Pieces.isPerson(p)) partner = b.houseIndex(Pieces.personNumber(p));
+        else if (Pieces.isHouse(p)) partner = b.personIndex(Pieces.houseNumber(p));
+        else partner = -1;
+        long targets = b.greenGrass() & WoodsyBoardData.EDGE_MASK;
+        if (partner >= 0) targets &= FAR_FROM[partner];
+        return targets;
+    }
+
+    public static int checkPlayTile(WoodsyBoardData b, int index) {
+        // Playing a path tile: either on a person, which starts them walking, or on a blank
+        // cell in the middle of the board.
+        if (!WoodsyRules.isValidIndex(index)) return INVALID_COORDS;
+        int target = b.getCellAt(index);
+        if (Pieces.personNumber(target) > 0) return OK;
+        if (WoodsyBoardData.isEdgeIndex(index)) return CANT_PLAY_PATH_PIECE_ON_EDGE;
+        if (!Pieces.isBlank(target)) return CANT_MOVE_THERE;
+        return OK;
+    }
+
+    public static long playTileTargets(WoodsyBoardData b) {
+        // Every cell checkPlayTile would allow: blank cells in the middle, and anyone's person.
+        return (b.blank() & WoodsyBoardData.INTERIOR_MASK) | b.anyPerson();
+    }
+
+    public static int checkStep(WoodsyBoardData b, int from, int to) {
+        // One step of a walking person from cell from to cell to.
+        if (!WoodsyRules.isValidIndex(to)) return INVALID_COORDS;
+        int source = b.getCellAt(from);
+        int target = b.getCellAt(to);
+        int personNumber = Pieces.personNumber(source);
+        if (Pieces.personNumber(target) > 0) return ONLY_ONE_PERSON_IN_SQUARE_AT_TIME;
+        if (Pieces.houseNumber(source) == personNumber) return ALL_MOVES_FINISHED;   // already home
+        if (!b.connects(from, to)) return PERSON_HAS_NO_PATH;
+        if (WoodsyBoardData.isEdgeIndex(to) && Pieces.houseNumber(target) != personNumber)
+            return PERSON_ON_EDGE_CAN_ONLY_GO_TO_THEIR_HOUSE;
+        return OK;
+    }
+
+    public static long stepTargets(WoodsyBoardData b, int from) {
+        // Every cell checkStep would allow for the person on cell from.
+        int source = b.getCellAt(from);
+        int personNumber = Pieces.personNumber(source);
+        if (personNumber == 0 || Pieces.houseNumber(source) == personNumber) return 0;
+        long f = 1L << from;
+        long joinsRight = b.joinsRight();
+        long joinsDown = b.joinsDown();
+        long next = ((f & joinsRight) << 1) | ((f >>> 1) & joinsRight)
+                | ((f & joinsDown) << WoodsyBoardData.WIDTH) | ((f >>> WoodsyBoardData.WIDTH) & joinsDown);
+        return next & (WoodsyBoardData.INTERIOR_MASK | b.houses(personNumber)) & ~b.anyPerson();
+    }
+
+    public static int checkDiscard(int p, boolean movingPerson) {
+        // Discarding a piece: only path tiles, and not once a person has started walking.
+        if (movingPerson) return CANT_DISCARD_MOVING_PERSON;
+        if (Pieces.isHouse(p)) return CANT_DISCARD_HOUSE;
+        if (Pieces.isPerson(p)) return CANT_DISCARD_PERSON;
+        return OK;
+    }
+}
@@ -0,0 +1,117 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+//
+//  WoodsyStateDelta: packs the game state into the state of a turn (WoodsyTurn.state), sending
+//  just what the turn changed when it can.
+//
+//  A payload starts with its kind:
+//    KEYFRAME:  a checksum, then the whole game (WoodsyGameData.writeTo).
+//    DELTA:     the checksum of the state it was made from, the checksum of the state it
+//               makes, then the changes (WoodsyGameData.writeChangesSince).
+//  The checksums are CRC32s of the whole game in the binary format.  A receiver whose state
+//  doesn't match the delta's starting checksum can't apply it, and read() says so by throwing
+//  IllegalStateException; the checksum at the end catches anything that went wrong applying it.
+//  Either way the fix is to ask for, or wait for, the next keyframe.
+//
+//  A keyframe goes out on every keyframeInterval'th turn, on the first turn, and whenever the
+//  change can't be written as a delta (e.g. someone joined), so a player who has fallen behind
+//  never has long to wait.
+//
+//  The object keeps a scratch buffer for working out checksums, so keep one around rather than
+//  making a new one each turn.  It isn't thread-safe.
+//
+
+public class WoodsyStateDelta {
+    public static final int KEYFRAME = 0;
+    public static final int DELTA = 1;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 8;
+
+    private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private CRC32 crc = new CRC32();
+
+    public void setKeyframeInterval(int turns) { this.keyframeInterval = Math.max(1, turns); }
+
+    public int checksum(WoodsyGameData game) {
+        // CRC32 of the game in the binary format.
+        int size = game.encodedSize();
+        if (this.scratch.capacity() < size) this.scratch = ByteBuffer.allocate(size * 2);
+        this.scratch.clear();
+        game.writeTo(this.scratch);
+        this.crc.reset();
+        this.crc.update(this.scratch.array(), 0, this.scratch.position());
+        return (int) this.crc.getValue();
+    }
+
+    public int maxSize(WoodsyGameData game) {
+        // a buffer this big always holds what write() writes for game.
+        return 1 + 4 + game.encodedSize();
+    }
+
+    public int write(WoodsyGameData previous, WoodsyGameData current, int turnCounter, ByteBuffer out) {
+        // Writes the payload for the turn that took previous (null if there isn't one) to
+        // current.  Returns the number of bytes written.
+        int start = out.position();
+        if (previous != null && turnCounter % this.keyframeInterval != 0) {
+            int before = this.checksum(previous);
+            int after = this.checksum(current);
+            out.put((byte) DELTA);
+            out.putInt(before);
+            out.putInt(after);
+            try {
+                if (current.writeChangesSince(previous, out) >= 0) {
+                    // a delta is only worth it if it is smaller than the keyframe, header and all.
+                    if (out.position() - start < this.maxSize(current)) return out.position() - start;
+                }
+            } catch (BufferOverflowException e) {
+                // more changes than fit in the buffer; send the whole game instead.
+            }
+            out.position(start);
+        }
+        out.put((byte) KEYFRAME);
+        out.putInt(this.checksum(current));
+        current.writeTo(out);
+        return out.position() - start;
+    }
+
+    public byte[] toByteArray(WoodsyGameData previous, WoodsyGameData current, int turnCounter) {
+        ByteBuffer out = ByteBuffer.allocate(this.maxSize(current));
+        int n = this.write(previous, current, turnCounter, out);
+        byte[] bytes = new byte[n];
+        System.arraycopy(out.array(), 0, bytes, 0, n);
+        return bytes;
+    }
+
+    public static boolean isKeyframe(byte[] payload) {
+        return payload != null && payload.length > 0 && payload[0] == KEYFRAME;
+    }
+
+    public WoodsyGameData read(WoodsyGameData previous, ByteBuffer in) {
+        // Reads a payload and returns the game it describes.  previous (which may be null for a
+        // keyframe) is left alone; a delta is applied to a fork of it.
+        int kind = in.get();
+        if (kind == KEYFRAME) {
+            int expected = in.getInt();
+            WoodsyGameData game = WoodsyGameData.readFrom(in);
+            if (this.checksum(game) != expected) throw new IllegalStateException("keyframe checksum doesn't match");
+            return game;
+        }
+        if (kind != DELTA) throw new IllegalArgumentException("unknown state payload kind " + kind);
+        int before = in.getInt();
+        int after = in.getInt();
+        if (previous == null || this.checksum(previous) != before)
+            throw new IllegalStateException("delta is for a different state; need a keyframe");
+        WoodsyGameData game = previous.fork();
+        game.applyChanges(in);
+        if (this.checksum(game) != after) throw new IllegalStateException("delta checksum doesn't match");
+        return game;
+    }
+
+    public WoodsyGameData read(WoodsyGameData previous, byte[] payload) {
+        return this.read(previous, ByteBuffer.wrap(payload));
+    }
+}
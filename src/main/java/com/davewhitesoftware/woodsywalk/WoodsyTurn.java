@@ -21,41 +21,121 @@ import android.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
- * Basic turn data. It's just a blank data string and a turn number counter.
+ * Basic turn data: the game state, a turn number counter, and a data string.
+ *
+ * On the wire a turn is a binary envelope, written and read straight to and from a ByteBuffer:
+ * <pre>
+ *   4 bytes   magic, "WWlk"
+ *   1 byte    envelope version
+ *   4 bytes   turn counter
+ *   4 bytes   length of the participant id, then the id as UTF-8
+ *   4 bytes   number of moves, then one byte each (WoodsyGameData.applyTurn's moves)
+ *   4 bytes   length of the state, then the state bytes (a WoodsyStateDelta payload: the
+ *             whole game, or just what this turn changed)
+ *   4 bytes   length of the data string, then the string as UTF-8
+ * </pre>
+ * The participant and moves say what was played, so that someone else can play the turn
+ * again and check the state it claims to lead to.  Turns saved before the envelope, which
+ * were JSON text, can still be read.
+ *
+ * Change DEBUG_PAYLOADS to true to log every payload in full; it is off normally because the
+ * payload grows with the game.  It is a constant, so the logging isn't even compiled in otherwise.
  *
  * @author wolff
  */
 public class WoodsyTurn {
 
   public static final String TAG = "EBTurn";
+  public static final boolean DEBUG_PAYLOADS = false;
+
+  public static final int MAGIC = 0x57576C6B;     // "WWlk"
+  public static final int VERSION = 1;
+  private static final int HEADER_BYTES = 4 + 1 + 4;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
 
   public String data = "";
   public int turnCounter;
+  public String participantId = "";
+  public int[] moves = new int[0];
+  public byte[] state = new byte[0];
 
   public WoodsyTurn() {
   }
 
-  // This is the byte array we will write out to the TBMP API.
-  public byte[] persist() {
-    JSONObject retVal = new JSONObject();
+  // The exact number of bytes writeTo will write.
+  public int encodedSize() {
+    return HEADER_BYTES + 4 + participantId.getBytes(UTF8).length + 4 + moves.length
+        + 4 + state.length + 4 + data.getBytes(UTF8).length;
+  }
 
-    try {
-      retVal.put("data", data);
-      retVal.put("turnCounter", turnCounter);
+  // Writes the envelope at out's position; returns the number of bytes written.
+  public int writeTo(ByteBuffer out) {
+    int start = out.position();
+    byte[] text = data.getBytes(UTF8);
+    out.putInt(MAGIC);
+    out.put((byte) VERSION);
+    out.putInt(turnCounter);
+    byte[] id = participantId.getBytes(UTF8);
+    out.putInt(id.length);
+    out.put(id);
+    out.putInt(moves.length);
+    for (int move : moves) {
+      out.put((byte) move);
+    }
+    out.putInt(state.length);
+    out.put(state);
+    out.putInt(text.length);
+    out.put(text);
+    return out.position() - start;
+  }
 
-    } catch (JSONException e) {
-      Log.e("SkeletonTurn", "There was an issue writing JSON!", e);
+  // Reads an envelope written by writeTo, starting at in's position.
+  static public WoodsyTurn readFrom(ByteBuffer in) {
+    if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC)
+      throw new IllegalArgumentException("not a Woodsy Walk turn");
+    int version = in.get() & 0xFF;
+    if (version != VERSION) throw new IllegalArgumentException("unknown turn version " + version);
+    WoodsyTurn retVal = new WoodsyTurn();
+    retVal.turnCounter = in.getInt();
+    byte[] id = new byte[WoodsyTurn.getLength(in)];
+    in.get(id);
+    retVal.participantId = new String(id, UTF8);
+    retVal.moves = new int[WoodsyTurn.getLength(in)];
+    for (int i = 0; i < retVal.moves.length; i++) {
+      retVal.moves[i] = in.get() & 0xFF;
     }
+    retVal.state = new byte[WoodsyTurn.getLength(in)];
+    in.get(retVal.state);
+    byte[] text = new byte[WoodsyTurn.getLength(in)];
+    in.get(text);
+    retVal.data = new String(text, UTF8);
+    return retVal;
+  }
+
+  static private int getLength(ByteBuffer in) {
+    int n = in.getInt();
+    if (n < 0 || n > in.remaining()) throw new IllegalArgumentException("bad length " + n);
+    return n;
+  }
 
-    String st = retVal.toString();
+  static public boolean isEnvelope(byte[] byteArray) {
+    return byteArray != null && byteArray.length >= HEADER_BYTES && ByteBuffer.wrap(byteArray).getInt() == MAGIC;
+  }
 
-    Log.d(TAG, "==== PERSISTING\n" + st);
+  // This is the byte array we will write out to the TBMP API.
+  public byte[] persist() {
+    ByteBuffer out = ByteBuffer.allocate(encodedSize());
+    writeTo(out);
 
-    return st.getBytes(Charset.forName("UTF-8"));
+    if (DEBUG_PAYLOADS) {
+      Log.d(TAG, "==== PERSISTING turn " + turnCounter + ", " + out.capacity() + " bytes\n" + data);
+    }
+
+    return out.array();
   }
 
   // Creates a new instance of WoodsyTurn.
@@ -66,15 +146,31 @@ public class WoodsyTurn {
       return new WoodsyTurn();
     }
 
-    String st = null;
+    if (!isEnvelope(byteArray)) {
+      return unpersistJson(byteArray);
+    }
+
     try {
-      st = new String(byteArray, "UTF-8");
-    } catch (UnsupportedEncodingException e1) {
-      e1.printStackTrace();
-      return null;
+      WoodsyTurn retVal = readFrom(ByteBuffer.wrap(byteArray));
+      if (DEBUG_PAYLOADS) {
+        Log.d(TAG, "====UNPERSIST turn " + retVal.turnCounter + ", " + byteArray.length + " bytes\n" + retVal.data);
+      }
+      return retVal;
+    } catch (RuntimeException e) {
+      // a truncated buffer or a bad length or version
+      Log.e("WoodsyTurn", "There was an issue reading the turn!", e);
+      return new WoodsyTurn();
     }
+  }
 
-    Log.d(TAG, "====UNPERSIST \n" + st);
+  // Reads a turn saved as JSON, before the binary envelope.  Those have no game state.
+  static private WoodsyTurn unpersistJson(byte[] byteArray) {
+
+    String st = new String(byteArray, UTF8);
+
+    if (DEBUG_PAYLOADS) {
+      Log.d(TAG, "====UNPERSIST (JSON) \n" + st);
+    }
 
     WoodsyTurn retVal = new WoodsyTurn();
 
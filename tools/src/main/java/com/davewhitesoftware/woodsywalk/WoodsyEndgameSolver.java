@@ -0,0 +1,276 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//
+//  WoodsyEndgameSolver: works out the best score a player could still finish with, by trying
+//  every way of playing their remaining pieces.  For grading moves after a game and for seeing
+//  how far the AI falls short of perfect play (see WoodsyEndgames), so it lives with the tools
+//  on the desktop JVM rather than in the app.
+//
+//  Everybody plays the same pieces in the same order, so once the bag is dealt a player's own
+//  board is a puzzle with nothing left to chance: nobody else's moves change it.  (The one thing
+//  shared is the goal points, which go down when anyone gets a person home; the solver takes
+//  them as they are now.)  The search is exhaustive, so it is only practical for the last few
+//  pieces -- each one multiplies the work by the number of places it can go.
+//
+//  It is a depth-first branch and bound.  The best line found so far (the incumbent) is shared
+//  by all the threads, and any position whose points so far plus an upper bound on what is
+//  left to win (every coin still out there, and every goal still to reach) can't beat it is
+//  cut off.  Positions at the start of a turn go in a transposition table, since the same board
+//  comes up again when tiles are put down in a different order.  The moves of the first turns
+//  are handed out as fork-join tasks, which idle threads steal.
+//
+//  All values inside the search are points still to be won from a position, packed as
+//  (points << 1) | 1 when they are exact, or (points << 1) when they are only an upper bound
+//  because part of the search under them was cut off.
+//
+
+public class WoodsyEndgameSolver {
+    private static final int TURN_END = WoodsyAI.STOP;         // the move that ends the turn
+    private static final int MAX_ACTIONS = WoodsyBoardData.CELLS + 2;
+    // a table entry: the key's top bits, then whether it's exact, whether it's used, and the points
+    private static final long TAG_MASK = 0xFFFFFFFFFFFC0000L;
+    private static final long EXACT_BIT = 1L << 17;
+    private static final long USED_BIT = 1L << 16;
+
+    private ForkJoinPool pool;
+    private int splitTurns = 2;         // turns at the top of the search whose moves are handed out as tasks
+    private AtomicLongArray table;
+    private int tableMask;
+    private long lastNodes = 0;
+    private long lastNanos = 0;
+    private int bestAction = -1;
+
+    // Shared by the threads during a solve
+    private String participantId;
+    private int[] coinsToCome;          // coinsToCome[n]: the coins on the last n pieces in the bag
+    private long solves = 0;
+    private long salt;                  // mixed into every key, so entries from earlier solves don't match
+    private AtomicLong incumbent = new AtomicLong();    // (points << 16) | (first move + 1) of the best line found
+    private LongAdder nodes = new LongAdder();
+
+    public WoodsyEndgameSolver() {
+        this(Runtime.getRuntime().availableProcessors(), 1 << 20);
+    }
+
+    public WoodsyEndgameSolver(int threads, int tableEntries) {
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+        int size = Integer.highestOneBit(Math.max(1024, tableEntries));
+        this.table = new AtomicLongArray(size);
+        this.tableMask = size - 1;
+    }
+
+    public void shutdown() {
+        // stops the worker threads; the solver can't be used afterwards.
+        this.pool.shutdown();
+    }
+
+    //-- Settings
+    public void setSplitTurns(int turns) { this.splitTurns = turns; }
+
+    //-- The answer, and statistics for the last solve
+    public int bestAction() { return this.bestAction; }
+    public long lastNodes() { return this.lastNodes; }
+    public double nodesPerSecond() {
+        if (this.lastNanos <= 0) return 0;
+        return this.lastNodes * 1e9 / this.lastNanos;
+    }
+
+    public int solve(WoodsyGameData game) {
+        // Returns the best final score the participant whose turn is in progress in game can
+        // get, and sets bestAction to the move that starts it (a cell, WoodsyAI.DISCARD, or
+        // WoodsyAI.STOP to end the turn).  game is not changed.
+        long start = System.nanoTime();
+        this.participantId = game.getCurrentParticipant();
+        int[] toCome = game.piecesToCome(this.participantId);
+        this.coinsToCome = new int[toCome.length + 1];
+        for (int n = 1; n <= toCome.length; n++)
+            this.coinsToCome[n] = this.coinsToCome[n - 1] + WoodsyEndgameSolver.coinPoints(game, toCome[toCome.length - n]);
+        this.salt = WoodsyHash.mix(++this.solves);
+        this.incumbent.set(-1L << 16);
+        this.nodes.reset();
+        this.pool.invoke(new SearchTask(game.fork(), 0, 0, -1, -1));
+        long best = this.incumbent.get();
+        this.bestAction = (int) (best & 0xFFFF) - 1;
+        this.lastNodes = this.nodes.sum();
+        this.lastNanos = System.nanoTime() - start;
+        return game.getScore(this.participantId) + Math.max(0, (int) (best >> 16));
+    }
+
+    private static int coinPoints(WoodsyGameData game, int p) {
+        int points = 0;
+        if (Pieces.silver(p)) points += game.pointsForSilver();
+        if (Pieces.gold(p)) points += game.pointsForGold();
+        return points;
+    }
+
+    private int upperBound(WoodsyGameData game) {
+        // More than can possibly be won from here: every coin on the board or still in the bag,
+        // and the goal points of every person not yet home.
+        WoodsyBoardData b = game.getCurrentBoard();
+        int bound = Long.bitCount(b.silverCoins()) * game.pointsForSilver() + Long.bitCount(b.goldCoins()) * game.pointsForGold();
+        bound += this.coinsToCome[Math.min(game.piecesLeftInBag(), this.coinsToCome.length - 1)];
+        for (int n = 1; n <= Pieces.numberOfPeople(); n++)
+            if (b.personIndex(n) != b.houseIndex(n) || b.personIndex(n) < 0) bound += game.getGoalPoints(n);
+        return bound;
+    }
+
+    private void offer(int points, int firstAction) {
+        // a line worth points has been found; keep it if it's the best yet.
+        long packed = ((long) points << 16) | (firstAction + 1);
+        long current;
+        while ((current = this.incumbent.get()) >> 16 < points)
+            if (this.incumbent.compareAndSet(current, packed)) return;
+    }
+
+    private int cutoff() {
+        return (int) (this.incumbent.get() >> 16);
+    }
+
+    //-- The transposition table
+    private long key(WoodsyGameData game) {
+        // what a position at the start of a turn depends on: the board, how far through the bag, and the goal points.
+        long k = this.salt ^ game.getCurrentBoard().hash() ^ WoodsyHash.key(WoodsyHash.BAG_POSITION, 0, game.piecesLeftInBag());
+        for (int n = 1; n <= Pieces.numberOfPeople(); n++) k ^= WoodsyHash.key(WoodsyHash.GOAL_POINTS, n, game.getGoalPoints(n));
+        return WoodsyHash.mix(k);
+    }
+
+    private int probe(long key) {
+        // the packed value stored for key, or -1.
+        long entry = this.table.get((int) key & this.tableMask);
+        if ((entry & USED_BIT) == 0 || (entry & TAG_MASK) != (key & TAG_MASK)) return -1;
+        return (int) ((entry & 0xFFFF) << 1) | ((entry & EXACT_BIT) != 0 ? 1 : 0);
+    }
+
+    private void store(long key, int result) {
+        long entry = (key & TAG_MASK) | USED_BIT | ((result & 1) != 0 ? EXACT_BIT : 0) | ((result >> 1) & 0xFFFF);
+        this.table.set((int) key & this.tableMask, entry);
+    }
+
+    //
+    //  Searches the positions under one move.  Near the top of the search it splits into a
+    //  task per move; deeper down it searches depth first on its own fork of the game, taking
+    //  each move back with undoStep.
+    //
+    private class SearchTask extends RecursiveTask<Integer> {
+        static final long serialVersionUID = 1L;
+
+        private WoodsyGameData game;
+        private int turns;                  // turns ended between the root and this position
+        private int points;                 // points won between the root and this position
+        private int firstAction;            // the move at the root that leads here, or -1 for the root
+        private int action;                 // the move to make on game first, or -1 for none
+        private ArrayList<int[]> actions = new ArrayList<int[]>();  // moves to try, for each ply
+        private long nodes = 0;
+
+        SearchTask(WoodsyGameData game, int turns, int points, int firstAction, int action) {
+            this.game = game;
+            this.turns = turns;
+            this.points = points;
+            this.firstAction = firstAction;
+            this.action = action;
+        }
+
+        @Override
+        protected Integer compute() {
+            WoodsyEndgameSolver solver = WoodsyEndgameSolver.this;
+            int result = (this.action < 0)
+                    ? this.search(this.game, 0, this.turns, this.points)
+                    : this.move(this.game, this.action, 0, this.turns, this.points);
+            solver.nodes.add(this.nodes);
+            return result;
+        }
+
+        private int[] actionsAt(int ply) {
+            while (this.actions.size() <= ply) this.actions.add(new int[MAX_ACTIONS]);
+            return this.actions.get(ply);
+        }
+
+        private int move(WoodsyGameData game, int action, int ply, int turns, int points) {
+            // The packed value of making action, including the points it wins right away.  game
+            // is put back as it was.
+            if (action == TURN_END) return this.nextTurn(game, ply, turns + 1, points);
+            int before = game.getScore(WoodsyEndgameSolver.this.participantId);
+            if (!WoodsyAI.applyAction(game, action)) return -1;
+            int gain = game.getScore(WoodsyEndgameSolver.this.participantId) - before;
+            int r = this.search(game, ply + 1, turns, points + gain);
+            game.undoStep();
+            return (((r >> 1) + gain) << 1) | (r & 1);
+        }
+
+        private int search(WoodsyGameData game, int ply, int turns, int points) {
+            WoodsyEndgameSolver solver = WoodsyEndgameSolver.this;
+            this.nodes++;
+            int bound = solver.upperBound(game);
+            if (points + bound <= solver.cutoff()) return bound << 1;
+            int[] actions = this.actionsAt(ply);
+            int n = WoodsyAI.listActions(game, actions);
+            if (n == 0) {
+                // the turn is over; all that's left is to end it
+                actions[0] = TURN_END;
+                n = 1;
+            }
+            int bestExact = -1, bestBound = -1;
+            if (turns < solver.splitTurns && n > 1) {
+                // hand each move out as a task of its own
+                SearchTask[] tasks = new SearchTask[n];
+                for (int i = 0; i < n; i++)
+                    tasks[i] = new SearchTask(game.fork(), turns, points, (ply == 0 && this.firstAction < 0) ? actions[i] : this.firstAction, actions[i]);
+                RecursiveTask.invokeAll(tasks);
+                for (SearchTask t : tasks) {
+                    int r = t.join();
+                    if (r < 0) continue;
+                    if ((r & 1) != 0) bestExact = Math.max(bestExact, r >> 1);
+                    else bestBound = Math.max(bestBound, r >> 1);
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    int first = (ply == 0 && this.firstAction < 0) ? actions[i] : this.firstAction;
+                    int saved = this.firstAction;
+                    this.firstAction = first;
+                    int r = this.move(game, actions[i], ply, turns, points);
+                    this.firstAction = saved;
+                    if (r < 0) continue;
+                    if ((r & 1) != 0) bestExact = Math.max(bestExact, r >> 1);
+                    else bestBound = Math.max(bestBound, r >> 1);
+                }
+            }
+            if (bestExact >= bestBound) return (Math.max(bestExact, 0) << 1) | 1;
+            return bestBound << 1;
+        }
+
+        private int nextTurn(WoodsyGameData game, int ply, int turns, int points) {
+            // Ends the turn (on a fork, since ending a turn can't be taken back) and searches the
+            // participant's next turn.
+            WoodsyEndgameSolver solver = WoodsyEndgameSolver.this;
+            WoodsyGameData next = game.fork();
+            next.endTurn();
+            if (!next.gameOver()) next.beginTurn(solver.participantId);
+            if (next.gameOver() || !next.piecesLeftThisTurn()) {
+                // nothing left to play: the line ends here
+                solver.offer(points, this.firstAction);
+                return 1;
+            }
+            // person and house pieces still to place come from a shared pile, so only tile turns go in the table
+            boolean inTable = Pieces.isTile(next.getNextPiece());
+            long key = inTable ? solver.key(next) : 0;
+            if (inTable) {
+                int stored = solver.probe(key);
+                if (stored >= 0 && (stored & 1) != 0) {
+                    solver.offer(points + (stored >> 1), this.firstAction);
+                    return stored;
+                }
+                if (stored >= 0 && points + (stored >> 1) <= solver.cutoff()) return stored;
+            }
+            int r = this.search(next, ply + 1, turns, points);
+            if (inTable) solver.store(key, r);
+            return r;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.util.ArrayList;
+
+//
+//  WoodsyEndgames: measures how close the AI gets to perfect play at the end of a game, and
+//  how fast the endgame solver is on each number of threads.
+//
+//  Each game is played at random until the first seat has only --pieces pieces left.  The
+//  solver works out the best score they could still get, on each thread count in --threads
+//  (which must all agree), and then WoodsyAI plays the rest of that seat's pieces on its own.
+//  Each of the AI's moves is graded by solving again after it: a move after which the best
+//  score possible has gone down is a mistake, and the drop is the points it lost.
+//
+//  Usage: WoodsyEndgames [--games N] [--pieces N] [--threads 1,2,4] [--ai-millis N] [--seed N]
+//
+
+public class WoodsyEndgames {
+    private static final int MAX_MOVES = 64;        // safety limit on the moves in one turn
+
+    private int games = 50;
+    private int pieces = 5;
+    private int[] threadCounts = { 1, Runtime.getRuntime().availableProcessors() };
+    private long aiMillis = 50;
+    private long seed = 1;
+    private int mistakes = 0;
+    private long pointsLost = 0;
+
+    public static void main(String[] args) {
+        WoodsyEndgames e = new WoodsyEndgames();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = (i + 1 < args.length) ? args[++i] : "";
+            if (arg.equals("--games")) e.games = Integer.parseInt(value);
+            else if (arg.equals("--pieces")) e.pieces = Integer.parseInt(value);
+            else if (arg.equals("--threads")) e.threadCounts = WoodsyEndgames.parseInts(value);
+            else if (arg.equals("--ai-millis")) e.aiMillis = Long.parseLong(value);
+            else if (arg.equals("--seed")) e.seed = Long.parseLong(value);
+            else {
+                System.err.println("unknown option " + arg);
+                System.exit(2);
+            }
+        }
+        e.run();
+    }
+
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i]);
+        return values;
+    }
+
+    public void run() {
+        WoodsyEndgameSolver[] solvers = new WoodsyEndgameSolver[this.threadCounts.length];
+        for (int i = 0; i < solvers.length; i++) solvers[i] = new WoodsyEndgameSolver(this.threadCounts[i], 1 << 20);
+        long[] nodes = new long[solvers.length];
+        double[] seconds = new double[solvers.length];
+        WoodsyAI ai = new WoodsyAI(1, this.seed);
+        ai.setTimeBudget(this.aiMillis);
+        int played = 0, disagreements = 0, aiMoves = 0;
+        long optimalTotal = 0, aiTotal = 0;
+        ArrayList<String> ids = new ArrayList<String>();
+        ids.add("seat1");
+        ids.add("seat2");
+        for (int g = 0; g < this.games; g++) {
+            long gameSeed = WoodsyHash.mix(this.seed * 0x9E3779B97F4A7C15L + g);
+            WoodsyGameData game = this.playUntilEndgame(ids, gameSeed);
+            if (game == null) continue;
+            played++;
+            // the best score there is, on every thread count
+            int optimal = -1;
+            for (int i = 0; i < solvers.length; i++) {
+                long start = System.nanoTime();
+                int best = solvers[i].solve(game);
+                seconds[i] += (System.nanoTime() - start) / 1e9;
+                nodes[i] += solvers[i].lastNodes();
+                if (optimal >= 0 && best != optimal) disagreements++;
+                optimal = best;
+            }
+            optimalTotal += optimal;
+            // the AI plays the rest, with every move graded
+            WoodsyEndgameSolver grader = solvers[solvers.length - 1];
+            int possible = optimal;
+            int[] actions = new int[WoodsyBoardData.CELLS + 2];
+            while (true) {
+                int moves = 0;
+                while (moves++ < MAX_MOVES && WoodsyAI.listActions(game, actions) > 0) {
+                    int action = ai.chooseAction(game, "seat1", this.aiMillis);
+                    aiMoves++;
+                    if (action == WoodsyAI.STOP || !WoodsyAI.applyAction(game, action)) break;
+                    possible = this.grade(possible, grader.solve(game));
+                }
+                // ending the turn is graded along with the move that ended it
+                game.endTurn();
+                if (!game.gameOver()) game.beginTurn("seat1");
+                if (game.gameOver() || !game.piecesLeftThisTurn()) {
+                    this.grade(possible, game.getScore("seat1"));
+                    break;
+                }
+                possible = this.grade(possible, grader.solve(game));
+            }
+            aiTotal += game.getScore("seat1");
+        }
+        ai.shutdown();
+        for (WoodsyEndgameSolver s : solvers) s.shutdown();
+
+        System.out.printf("endgames:     %d games, from the last %d pieces%n", played, this.pieces);
+        for (int i = 0; i < solvers.length; i++)
+            System.out.printf("  %2d threads: %d nodes in %.2f s (%.0f nodes/s, %.2fx one thread)%n", this.threadCounts[i], nodes[i],
+                    seconds[i], nodes[i] / Math.max(seconds[i], 1e-9), seconds[0] / Math.max(seconds[i], 1e-9));
+        if (disagreements > 0) System.out.printf("  thread counts disagreed on %d games!%n", disagreements);
+        if (played == 0) return;
+        System.out.printf("best score:   %.2f on average%n", (double) optimalTotal / played);
+        System.out.printf("AI score:     %.2f on average (%.2f short of perfect)%n", (double) aiTotal / played,
+                (double) (optimalTotal - aiTotal) / played);
+        System.out.printf("AI moves:     %d, of which %d were mistakes losing %d points%n", aiMoves, this.mistakes, this.pointsLost);
+    }
+
+    private int grade(int possible, int now) {
+        // a move took the best score possible from possible to now; returns now.
+        if (now < possible) {
+            this.mistakes++;
+            this.pointsLost += possible - now;
+        }
+        return now;
+    }
+
+    private WoodsyGameData playUntilEndgame(ArrayList<String> ids, long gameSeed) {
+        // Plays a game at random until seat1's turn begins with no more than the given number of
+        // pieces left, and returns it with that turn begun; or null if the game ended first.
+        WoodsyGameData game = new WoodsyGameData(ids, gameSeed);
+        WoodsyRandom rnd = new WoodsyRandom(gameSeed).split();
+        for (int turn = 0; !game.gameOver(); turn++) {
+            game.beginTurn(ids.get(turn % ids.size()));
+            if (turn % ids.size() == 0 && game.piecesLeftInBag() <= this.pieces) return game.piecesLeftThisTurn() ? game : null;
+            int moves = 0;
+            while (moves++ < MAX_MOVES && WoodsyAI.playRandomMove(game, rnd)) { }
+            game.endTurn();
+        }
+        return null;
+    }
+}
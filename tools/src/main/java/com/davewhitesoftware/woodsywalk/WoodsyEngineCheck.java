@@ -0,0 +1,190 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+//
+//  WoodsyEngineCheck: plays lots of random games and cross-checks the parts of the engine that
+//  have a fast path and a slow path that must always agree.  Run it after changing the rules,
+//  the move journal or applyTurn.
+//
+//  Three checks, on every move or turn of every game:
+//    legal moves   legalMoves(p) against trying playPieceAt on every cell, each on a fork.
+//    undo/redo     at the end of each turn, undoStep all the way back and redoStep all the
+//                  way forward again, comparing the turn's state (board, scores, goal points,
+//                  walking person, next piece, hash) with what it was after each move.
+//    applyTurn     each turn played again with applyTurn on a copy of the game from before it
+//                  must give byte for byte the same game.  Then the same turn with one move
+//                  changed at random (or sent by someone not in the game) must either be
+//                  refused and leave the game exactly as it was, or be a legal turn after all.
+//
+//  It prints how many of each it checked and any mismatches, and exits with status 1 if there
+//  were any.
+//
+//  Usage: WoodsyEngineCheck [--games N] [--players N] [--seed N]
+//
+
+public class WoodsyEngineCheck {
+    private static final int MAX_TURNS = 1000;      // safety limit on the length of one game
+    private static final int MAX_MOVES = 64;        // safety limit on the moves in one turn
+    private static final int MAX_REPORTS = 10;      // mismatches printed in full
+
+    private int games = 300;
+    private int players = 2;
+    private long seed = 1;
+    private long legalChecks = 0, undoChecks = 0, turnChecks = 0, refusedTurns = 0;
+    private long mismatches = 0;
+
+    public static void main(String[] args) {
+        WoodsyEngineCheck c = new WoodsyEngineCheck();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = (i + 1 < args.length) ? args[++i] : "";
+            if (arg.equals("--games")) c.games = Integer.parseInt(value);
+            else if (arg.equals("--players")) c.players = Integer.parseInt(value);
+            else if (arg.equals("--seed")) c.seed = Long.parseLong(value);
+            else {
+                System.err.println("unknown option " + arg);
+                System.exit(2);
+            }
+        }
+        c.run();
+        System.exit(c.mismatches == 0 ? 0 : 1);
+    }
+
+    public void run() {
+        long start = System.nanoTime();
+        ArrayList<String> ids = new ArrayList<String>();
+        for (int seat = 0; seat < this.players; seat++) ids.add("seat" + (seat + 1));
+        for (int g = 0; g < this.games; g++) {
+            long gameSeed = WoodsyHash.mix(this.seed * 0x9E3779B97F4A7C15L + g);
+            this.playGame(ids, gameSeed);
+        }
+        System.out.printf("games:        %d with %d players, in %.1f s%n", this.games, this.players, (System.nanoTime() - start) / 1e9);
+        System.out.printf("legal moves:  %d cells tried%n", this.legalChecks);
+        System.out.printf("undo/redo:    %d states compared%n", this.undoChecks);
+        System.out.printf("applyTurn:    %d turns replayed, %d changed turns refused and rolled back%n", this.turnChecks, this.refusedTurns);
+        System.out.printf("mismatches:   %d%n", this.mismatches);
+    }
+
+    private void playGame(ArrayList<String> ids, long gameSeed) {
+        WoodsyGameData game = new WoodsyGameData(ids, gameSeed);
+        WoodsyRandom rnd = new WoodsyRandom(gameSeed).split();
+        for (int turn = 0; turn < MAX_TURNS && !game.gameOver(); turn++) {
+            String id = ids.get(turn % ids.size());
+            WoodsyGameData before = game.fork();
+            game.beginTurn(id);
+            ArrayList<long[]> states = new ArrayList<long[]>();
+            int[] moves = new int[MAX_MOVES];
+            int n = 0;
+            states.add(WoodsyEngineCheck.state(game));
+            while (n < MAX_MOVES) {
+                if (game.movingPerson() || game.piecesLeftThisTurn()) this.checkLegalMoves(game);
+                int move = WoodsyEngineCheck.randomMove(game, rnd);
+                if (move < 0) break;
+                moves[n++] = move;
+                states.add(WoodsyEngineCheck.state(game));
+            }
+            this.checkUndoRedo(game, states);
+            game.endTurn();
+            this.checkApplyTurn(before, game, id, Arrays.copyOf(moves, n), rnd);
+        }
+    }
+
+    private void mismatch(String what) {
+        if (this.mismatches++ < MAX_REPORTS) System.out.println("MISMATCH: " + what);
+    }
+
+    //-- The checks
+    private void checkLegalMoves(WoodsyGameData game) {
+        int p = game.getNextPiece();
+        long legal = game.legalMoves(p);
+        for (int c = 0; c < WoodsyBoardData.CELLS; c++) {
+            WoodsyGameData f = game.fork();
+            boolean accepted = !Pieces.isFailurePiece(f.playPieceAt(p, WoodsyBoardData.xOf(c), WoodsyBoardData.yOf(c)));
+            this.legalChecks++;
+            if (accepted != ((legal & (1L << c)) != 0))
+                this.mismatch("legalMoves says " + !accepted + " but playPieceAt says " + accepted + " for piece " + p + " on cell " + c);
+        }
+    }
+
+    private void checkUndoRedo(WoodsyGameData game, ArrayList<long[]> states) {
+        // states.get(i) is the state after i moves; the game is at the last one.
+        for (int i = states.size() - 1; i > 0; i--) {
+            if (!game.undoStep()) {
+                this.mismatch("undoStep refused with " + i + " moves to undo");
+                return;
+            }
+            this.compare("undo to move " + (i - 1), states.get(i - 1), WoodsyEngineCheck.state(game));
+        }
+        if (game.undoStep()) this.mismatch("undoStep went past the start of the turn");
+        for (int i = 1; i < states.size(); i++) {
+            if (!game.redoStep()) {
+                this.mismatch("redoStep refused at move " + i);
+                return;
+            }
+            this.compare("redo to move " + i, states.get(i), WoodsyEngineCheck.state(game));
+        }
+        if (game.redoStep()) this.mismatch("redoStep went past the end of the turn");
+    }
+
+    private void compare(String what, long[] expected, long[] actual) {
+        this.undoChecks++;
+        if (!Arrays.equals(expected, actual)) this.mismatch(what + ": expected " + Arrays.toString(expected) + ", got " + Arrays.toString(actual));
+    }
+
+    private void checkApplyTurn(WoodsyGameData before, WoodsyGameData after, String id, int[] moves, WoodsyRandom rnd) {
+        // the turn as played
+        byte[] expected = after.toByteArray();
+        WoodsyGameData replay = before.fork();
+        int failed = replay.applyTurn(id, moves);
+        this.turnChecks++;
+        if (failed >= 0) this.mismatch("applyTurn refused move " + failed + " of a turn that was played (error " + replay.getLastError() + ")");
+        else if (!Arrays.equals(expected, replay.toByteArray()) || replay.hash() != after.hash()) this.mismatch("applyTurn gave a different game than playing the turn");
+        // the turn changed: one move replaced by a random one, or an extra one on the end
+        int[] changed = Arrays.copyOf(moves, moves.length + 1);
+        int at = rnd.nextInt(changed.length);
+        changed[at] = (rnd.nextInt(8) == 0) ? WoodsyGameData.MOVE_DISCARD : rnd.nextInt(WoodsyBoardData.CELLS + 8);
+        boolean stranger = rnd.nextInt(4) == 0 && before.participantCount() < WoodsyGameData.MAX_PARTICIPANTS;
+        String sender = stranger ? "stranger" : id;
+        // A refused turn leaves nobody's turn begun, as a game just loaded is; the game before it
+        // still has the last turn's player as its current one, which its hash counts.
+        byte[] unchanged = before.toByteArray();
+        long unchangedHash = WoodsyGameData.fromByteArray(unchanged).hash();
+        int participants = before.participantCount();
+        WoodsyGameData tampered = before.fork();
+        failed = tampered.applyTurn(sender, changed, changed.length);
+        if (failed < 0) return;     // it happened to be legal
+        this.refusedTurns++;
+        if (tampered.participantCount() != participants) this.mismatch("a refused turn left its participant in the game");
+        if (!Arrays.equals(unchanged, tampered.toByteArray()) || tampered.hash() != unchangedHash)
+            this.mismatch("a refused turn didn't leave the game as it was");
+    }
+
+    //-- Helpers
+    private static int randomMove(WoodsyGameData game, WoodsyRandom rnd) {
+        // Makes a random legal move, as applyTurn's moves; returns it, or -1 at the end of the turn.
+        int[] actions = new int[WoodsyBoardData.CELLS + 2];
+        int n = WoodsyAI.listActions(game, actions);
+        if (n == 0) return -1;
+        int action = actions[rnd.nextInt(n)];
+        if (action == WoodsyAI.STOP || !WoodsyAI.applyAction(game, action)) return -1;
+        return action;
+    }
+
+    private static long[] state(WoodsyGameData game) {
+        // everything a move can change during a turn, for comparing.
+        WoodsyBoardData b = game.getCurrentBoard();
+        String id = game.getCurrentParticipant();
+        long[] s = new long[WoodsyBoardData.CELLS + Pieces.numberOfPeople() + 5];
+        int n = 0;
+        for (int c = 0; c < WoodsyBoardData.CELLS; c++) s[n++] = b.getCellAt(c);
+        for (int p = 1; p <= Pieces.numberOfPeople(); p++) s[n++] = game.getGoalPoints(p);
+        s[n++] = game.getScore(id);
+        s[n++] = game.movingPerson() ? 1 + game.movingPersonCell() : 0;
+        s[n++] = game.movingPersonMovesLeft();
+        s[n++] = game.getNextPiece();
+        s[n++] = game.hash();
+        return s;
+    }
+}
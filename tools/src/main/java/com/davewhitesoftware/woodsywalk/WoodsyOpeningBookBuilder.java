@@ -0,0 +1,176 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//
+//  WoodsyOpeningBookBuilder: works out where the first people and houses should go, and writes
+//  it to an opening book (see WoodsyOpeningBook) for the app to look up.
+//
+//  The opening positions are the empty board and the board with each possible first pair on
+//  it, one of each set of mirror images.  For each, every legal place for the next pair (again
+//  one of each set of mirror images, if the position is its own mirror image) is played out
+//  --playouts times to the end of the game at random, as WoodsyAI's playouts do, and scored by
+//  the average final score.  The other seat's turns are played out too, since they take the
+//  persons and houses left in the shared pile and can get people home first.  Every candidate
+//  is played out on the same --playouts bags, with the same random numbers, so the differences
+//  between them come from where the pair went and not from luck.  The best --moves of each are
+//  written to the book.
+//
+//  The games are two-player games, where the second pair goes down in the same turn as the
+//  first.  With more players it comes some turns later, but where it should go is much the same.
+//
+//  Usage: WoodsyOpeningBookBuilder [--out FILE] [--playouts N] [--moves N] [--threads N] [--seed N]
+//
+
+public class WoodsyOpeningBookBuilder {
+    private static final int MAX_TURNS = 200;       // safety limit on the length of one playout
+
+    private File out = new File("woodsy-openings.book");
+    private int playouts = 32;
+    private int moves = 16;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 1;
+    private ArrayList<String> ids = new ArrayList<String>();
+
+    public static void main(String[] args) throws Exception {
+        WoodsyOpeningBookBuilder builder = new WoodsyOpeningBookBuilder();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = (i + 1 < args.length) ? args[++i] : "";
+            if (arg.equals("--out")) builder.out = new File(value);
+            else if (arg.equals("--playouts")) builder.playouts = Integer.parseInt(value);
+            else if (arg.equals("--moves")) builder.moves = Integer.parseInt(value);
+            else if (arg.equals("--threads")) builder.threads = Integer.parseInt(value);
+            else if (arg.equals("--seed")) builder.seed = Long.parseLong(value);
+            else {
+                System.err.println("unknown option " + arg);
+                System.exit(2);
+            }
+        }
+        builder.run();
+    }
+
+    public WoodsyOpeningBookBuilder() {
+        this.ids.add("seat1");
+        this.ids.add("seat2");
+    }
+
+    public void run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        // the positions: the empty board, then every first pair, in key order
+        final int[] positions = this.candidates(WoodsyOpeningBook.EMPTY_BOARD);
+        final int[] keys = new int[positions.length + 1];
+        keys[0] = WoodsyOpeningBook.EMPTY_BOARD;
+        System.arraycopy(positions, 0, keys, 1, positions.length);
+        final int[][] persons = new int[keys.length][];
+        final int[][] houses = new int[keys.length][];
+        final int[][] scores = new int[keys.length][];
+        // each thread takes the next position until there are none left
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, this.threads));
+        for (int t = 0; t < Math.max(1, this.threads); t++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    int i;
+                    while ((i = next.getAndIncrement()) < keys.length) {
+                        int[] candidates = WoodsyOpeningBookBuilder.this.candidates(keys[i]);
+                        int[] averages = WoodsyOpeningBookBuilder.this.score(keys[i], candidates);
+                        WoodsyOpeningBookBuilder.this.keepBest(candidates, averages, i, persons, houses, scores);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        WoodsyOpeningBook.write(this.out, keys, persons, houses, scores, this.moves);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("opening book: %d positions, %d moves each, %d playouts a move, in %.1f s%n", keys.length, this.moves,
+                this.playouts, seconds);
+        System.out.printf("empty board:  best pair person %d, house %d, %.2f points on average%n", persons[0][0], houses[0][0],
+                scores[0][0] / 100.0);
+        System.out.printf("written to    %s (%d bytes)%n", this.out, this.out.length());
+    }
+
+    //-- Positions and candidates
+    private WoodsyGameData setUp(int key, long gameSeed) {
+        // A two-player game from gameSeed, with the first seat's turn begun and the pair in key
+        // (if any) already down as its first pair.
+        WoodsyGameData game = new WoodsyGameData(this.ids, gameSeed);
+        game.beginTurn("seat1");
+        if (key != WoodsyOpeningBook.EMPTY_BOARD) this.placePair(game, key);
+        return game;
+    }
+
+    private boolean placePair(WoodsyGameData game, int key) {
+        // puts down the next person and house at the cells in key; returns false if either was refused.
+        int person = (key - 1) / WoodsyBoardData.CELLS, house = (key - 1) % WoodsyBoardData.CELLS;
+        return WoodsyAI.applyAction(game, person) && WoodsyAI.applyAction(game, house);
+    }
+
+    private int[] candidates(int key) {
+        // Every place the next pair can go from the position key, one of each set that are
+        // mirror images of each other while leaving the position as it is, as keys in order.
+        WoodsyGameData game = this.setUp(key, this.seed);
+        boolean[] seen = new boolean[WoodsyBoardData.CELLS * WoodsyBoardData.CELLS + 1];
+        int count = 0;
+        for (long ps = game.legalMoves(game.getNextPiece()); ps != 0; ps &= ps - 1) {
+            int person = Long.numberOfTrailingZeros(ps);
+            if (!WoodsyAI.applyAction(game, person)) continue;
+            for (long hs = game.legalMoves(game.getNextPiece()); hs != 0; hs &= hs - 1) {
+                int pair = WoodsyOpeningBook.pairKey(person, Long.numberOfTrailingZeros(hs));
+                int canonical = pair;
+                for (int s = 1; s < WoodsyOpeningBook.SYMMETRIES; s++)
+                    if (WoodsyOpeningBook.flipKey(key, s) == key) canonical = Math.min(canonical, WoodsyOpeningBook.flipKey(pair, s));
+                if (!seen[canonical]) count++;
+                seen[canonical] = true;
+            }
+            game.undoStep();
+        }
+        int[] keys = new int[count];
+        for (int k = 0, n = 0; k < seen.length; k++) if (seen[k]) keys[n++] = k;
+        return keys;
+    }
+
+    //-- Scoring
+    private int[] score(int key, int[] candidates) {
+        // The average final score of each candidate, in hundredths of a point.
+        long[] totals = new long[candidates.length];
+        for (int i = 0; i < this.playouts; i++) {
+            long gameSeed = WoodsyHash.mix(this.seed * 0x9E3779B97F4A7C15L + i);
+            WoodsyGameData position = this.setUp(key, gameSeed);
+            for (int c = 0; c < candidates.length; c++) {
+                WoodsyGameData game = position.fork();
+                if (!this.placePair(game, candidates[c])) continue;
+                totals[c] += WoodsyAI.playout(game, "seat1", new WoodsyRandom(gameSeed).split(), MAX_TURNS, true);
+            }
+        }
+        int[] averages = new int[candidates.length];
+        for (int c = 0; c < candidates.length; c++) averages[c] = (int) Math.round(totals[c] * 100.0 / Math.max(1, this.playouts));
+        return averages;
+    }
+
+    private void keepBest(int[] candidates, int[] averages, int i, int[][] persons, int[][] houses, int[][] scores) {
+        // the best moves of the candidates for position i, best first.
+        int n = Math.min(this.moves, candidates.length);
+        persons[i] = new int[n];
+        houses[i] = new int[n];
+        scores[i] = new int[n];
+        boolean[] taken = new boolean[candidates.length];
+        for (int j = 0; j < n; j++) {
+            int best = -1;
+            for (int c = 0; c < candidates.length; c++)
+                if (!taken[c] && (best < 0 || averages[c] > averages[best])) best = c;
+            taken[best] = true;
+            persons[i][j] = (candidates[best] - 1) / WoodsyBoardData.CELLS;
+            houses[i][j] = (candidates[best] - 1) % WoodsyBoardData.CELLS;
+            scores[i][j] = averages[best];
+        }
+    }
+}
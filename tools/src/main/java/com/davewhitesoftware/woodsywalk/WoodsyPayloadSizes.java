@@ -0,0 +1,56 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+//
+//  WoodsyPayloadSizes: prints how many bytes a game takes to send, as Java serialization and
+//  in the game's binary format, for 2 to 4 players at several points in a game, and how big the
+//  turn's delta (WoodsyStateDelta) was on average up to that point.  The games are played at
+//  random from a fixed seed, so the numbers are the same every run.
+//
+//  Usage: WoodsyPayloadSizes [--seed N]
+//
+
+public class WoodsyPayloadSizes {
+    private static final int[] TURNS = { 0, 8, 24, 48, 72 };
+
+    public static void main(String[] args) throws IOException {
+        long seed = 1;
+        if (args.length == 2 && args[0].equals("--seed")) seed = Long.parseLong(args[1]);
+        System.out.println("players  turn   java  binary  delta");
+        WoodsyStateDelta delta = new WoodsyStateDelta();
+        delta.setKeyframeInterval(Integer.MAX_VALUE);
+        for (int players = 2; players <= 4; players++) {
+            ArrayList<String> ids = new ArrayList<String>();
+            // ids about as long as real Play Games participant ids
+            for (int i = 1; i <= players; i++) ids.add("p_CKqP3iHxh9KbEAEQ" + i);
+            WoodsyGameData game = new WoodsyGameData(ids, seed);
+            WoodsyRandom rnd = new WoodsyRandom(seed);
+            int turn = 0;
+            long deltaBytes = 0;
+            for (int t : TURNS) {
+                for (; turn < t && !game.gameOver(); turn++) {
+                    WoodsyGameData previous = game.fork();
+                    game.beginTurn(ids.get(turn % players));
+                    int guard = 0;
+                    while (guard++ < 64 && WoodsyAI.playRandomMove(game, rnd)) { }
+                    game.endTurn();
+                    deltaBytes += delta.toByteArray(previous, game, turn + 1).length;
+                }
+                System.out.printf("%7d  %4d  %5d  %6d  %5.1f%n", players, turn, WoodsyPayloadSizes.javaSize(game),
+                        game.encodedSize(), (turn == 0) ? 0.0 : (double) deltaBytes / turn);
+            }
+        }
+    }
+
+    private static int javaSize(WoodsyGameData game) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(game);
+        out.close();
+        return bytes.size();
+    }
+}
@@ -0,0 +1,91 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+//
+//  WoodsySimulationStats: the totals collected by WoodsySimulator.
+//
+//  Every simulator thread adds into the same counters at once, so they are all LongAdders:
+//  adding never locks or retries, and the sums are only worked out when the report is printed.
+//
+
+public class WoodsySimulationStats {
+    // Ways a tile can be used.
+    public static final int TILE_PLACED = 0;        // put down on a blank cell
+    public static final int TILE_WALKED = 1;        // played on a person to make them walk
+    public static final int TILE_DISCARDED = 2;
+    private static final int TILE_USES = 3;
+    private static final int PIECE_NUMBERS = 64;
+
+    private int seats;
+    private LongAdder games = new LongAdder();
+    private LongAdder turns = new LongAdder();
+    private LongAdder completedBoards = new LongAdder();    // games won by finishing a board
+    private LongAdder ties = new LongAdder();               // games with more than one winner
+    private LongAdder goldPoints = new LongAdder();
+    private LongAdder silverPoints = new LongAdder();
+    private LongAdder goalPoints = new LongAdder();
+    private LongAdder goalsReached = new LongAdder();
+    private LongAdder[] wins;            // by seat
+    private LongAdder[] scores;          // by seat
+    private LongAdder[][] tiles = new LongAdder[TILE_USES][PIECE_NUMBERS];     // by use, then piece number
+
+    WoodsySimulationStats(int seats) {
+        this.seats = seats;
+        this.wins = WoodsySimulationStats.adders(seats);
+        this.scores = WoodsySimulationStats.adders(seats);
+        for (int i = 0; i < TILE_USES; i++) this.tiles[i] = WoodsySimulationStats.adders(PIECE_NUMBERS);
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] a = new LongAdder[n];
+        for (int i = 0; i < n; i++) a[i] = new LongAdder();
+        return a;
+    }
+
+    //-- Recording
+    void addGame(int turns, boolean completedBoard, int winners) {
+        this.games.increment();
+        this.turns.add(turns);
+        if (completedBoard) this.completedBoards.increment();
+        if (winners > 1) this.ties.increment();
+    }
+    void addWin(int seat) { this.wins[seat].increment(); }
+    void addScore(int seat, int score) { this.scores[seat].add(score); }
+    void addCoins(int gold, int silver) {
+        if (gold != 0) this.goldPoints.add(gold);
+        if (silver != 0) this.silverPoints.add(silver);
+    }
+    void addGoal(int points) {
+        this.goalsReached.increment();
+        this.goalPoints.add(points);
+    }
+    void addTile(int use, int p) { this.tiles[use][Pieces.pieceNumber(p)].increment(); }
+
+    public long games() { return this.games.sum(); }
+
+    //-- Reporting
+    public void print(PrintStream out, double seconds) {
+        long games = Math.max(1, this.games.sum());
+        long playerGames = games * this.seats;
+        out.printf("games:              %d in %.2f s (%.0f games/s)%n", this.games.sum(), seconds, this.games.sum() / Math.max(seconds, 1e-9));
+        out.printf("turns per game:     %.2f (%.2f rounds)%n", (double) this.turns.sum() / games, (double) this.turns.sum() / playerGames);
+        out.printf("won by full board:  %.2f%%   ties: %.2f%%%n", 100.0 * this.completedBoards.sum() / games, 100.0 * this.ties.sum() / games);
+        out.printf("score per player:   gold %.3f  silver %.3f  goals %.3f (%.3f reached)%n",
+                (double) this.goldPoints.sum() / playerGames, (double) this.silverPoints.sum() / playerGames,
+                (double) this.goalPoints.sum() / playerGames, (double) this.goalsReached.sum() / playerGames);
+        for (int seat = 0; seat < this.seats; seat++)
+            out.printf("seat %d:             wins %.2f%%  average score %.3f%n", seat + 1,
+                    100.0 * this.wins[seat].sum() / games, (double) this.scores[seat].sum() / games);
+        out.println("tile uses per player per game (placed / walked / discarded):");
+        for (int n = 1; n < PIECE_NUMBERS; n++) {
+            long placed = this.tiles[TILE_PLACED][n].sum();
+            long walked = this.tiles[TILE_WALKED][n].sum();
+            long discarded = this.tiles[TILE_DISCARDED][n].sum();
+            if (placed + walked + discarded == 0) continue;
+            out.printf("  piece %2d:  %.3f / %.3f / %.3f%n", n, (double) placed / playerGames,
+                    (double) walked / playerGames, (double) discarded / playerGames);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//
+//  WoodsySimulator: plays lots of complete games with no screen, on every core, to see whether
+//  the scoring and the piece mix are balanced.
+//
+//  Each seat is played by a scripted player: "random" makes any legal move, "greedy" makes the
+//  move that scores the most points right away.  The scoring constants and the tile mix can be
+//  changed from the command line to try out other values: --tiles gives how many of each tile
+//  (by piece number, see Pieces.pieceNumber) go in the bag, with any not given left at one, so
+//  "--tiles 16=2,22=0" doubles tile 16 and leaves out tile 22.  At the end it prints average scores broken down by
+//  where the points came from, game length, wins by seat, how each tile gets used, and how many
+//  games per second the engine managed.
+//
+//  Every game gets its own seed, made from --seed and the game's number, which deals its bag
+//  and drives its players.  So a run gives the same totals whatever the number of threads, and
+//  any one game can be played again from its seed.
+//
+//  Usage: WoodsySimulator [--games N] [--threads N] [--seed N] [--players random,greedy,...]
+//                         [--gold N] [--silver N] [--goal N] [--tiles N=count,...]
+//
+
+public class WoodsySimulator {
+    private static final int MAX_TURNS = 1000;      // safety limit on the length of one game
+    private static final int MAX_MOVES = 64;        // safety limit on the moves in one turn
+
+    //
+    //  A scripted player: picks one of the n legal actions (see WoodsyAI.listActions).
+    //
+    interface Player {
+        int choose(WoodsyGameData game, int[] actions, int n, WoodsyRandom rnd);
+    }
+
+    static final Player RANDOM = new Player() {
+        public int choose(WoodsyGameData game, int[] actions, int n, WoodsyRandom rnd) {
+            return actions[rnd.nextInt(n)];
+        }
+    };
+
+    static final Player GREEDY = new Player() {
+        public int choose(WoodsyGameData game, int[] actions, int n, WoodsyRandom rnd) {
+            // tries each action on a fork and keeps the one that scores most; ties are broken at random.
+            int before = game.getScore(game.getCurrentParticipant());
+            int best = actions[rnd.nextInt(n)];
+            int bestGain = 0;
+            int start = rnd.nextInt(n);
+            for (int k = 0; k < n; k++) {
+                int action = actions[(start + k) % n];
+                if (action == WoodsyAI.STOP || action == WoodsyAI.DISCARD) continue;
+                WoodsyGameData f = game.fork();
+                if (!WoodsyAI.applyAction(f, action)) continue;
+                int gain = f.getScore(f.getCurrentParticipant()) - before;
+                if (gain > bestGain) { bestGain = gain; best = action; }
+            }
+            return best;
+        }
+    };
+
+    private int games = 100000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 1;
+    private Player[] players = new Player[] { RANDOM, RANDOM };
+    private int pointsForGold = -1;         // -1 keeps the game's own value
+    private int pointsForSilver = -1;
+    private int maxPointsForGoal = -1;
+    private int[] tileMix = null;           // null keeps the usual pieces
+
+    public static void main(String[] args) throws InterruptedException {
+        WoodsySimulator sim = new WoodsySimulator();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = (i + 1 < args.length) ? args[++i] : "";
+            if (arg.equals("--games")) sim.games = Integer.parseInt(value);
+            else if (arg.equals("--threads")) sim.threads = Integer.parseInt(value);
+            else if (arg.equals("--seed")) sim.seed = Long.parseLong(value);
+            else if (arg.equals("--players")) sim.players = WoodsySimulator.parsePlayers(value);
+            else if (arg.equals("--gold")) sim.pointsForGold = Integer.parseInt(value);
+            else if (arg.equals("--silver")) sim.pointsForSilver = Integer.parseInt(value);
+            else if (arg.equals("--goal")) sim.maxPointsForGoal = Integer.parseInt(value);
+            else if (arg.equals("--tiles")) sim.tileMix = WoodsySimulator.parseTiles(value);
+            else {
+                System.err.println("unknown option " + arg);
+                System.exit(2);
+            }
+        }
+        long start = System.nanoTime();
+        WoodsySimulationStats stats = sim.run();
+        stats.print(System.out, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static Player[] parsePlayers(String list) {
+        String[] names = list.split(",");
+        if (names.length < 2 || names.length > 4) throw new IllegalArgumentException("need 2 to 4 players");
+        Player[] players = new Player[names.length];
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals("random")) players[i] = RANDOM;
+            else if (names[i].equals("greedy")) players[i] = GREEDY;
+            else throw new IllegalArgumentException("unknown player " + names[i]);
+        }
+        return players;
+    }
+
+    public WoodsySimulationStats run() throws InterruptedException {
+        // Plays all the games on a pool of threads; each thread takes the next game number until
+        // there are none left.
+        final WoodsySimulationStats stats = new WoodsySimulationStats(this.players.length);
+        final AtomicLong nextGame = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        for (int t = 0; t < this.threads; t++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    long g;
+                    while ((g = nextGame.getAndIncrement()) < WoodsySimulator.this.games)
+                        WoodsySimulator.this.playGame(WoodsySimulator.this.gameSeed(g), stats);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        return stats;
+    }
+
+    long gameSeed(long g) {
+        // the seed for game number g of this run.
+        return WoodsyHash.mix(this.seed * 0x9E3779B97F4A7C15L + g);
+    }
+
+    private static int[] parseTiles(String list) {
+        // The bag for a list of piece number=count: every piece in Pieces.allPieces, as many
+        // times as its count says, or once if it isn't in the list.
+        int[] all = Pieces.allPieces();
+        int[] counts = new int[all.length];
+        Arrays.fill(counts, 1);
+        for (String item : list.split(",")) {
+            String[] parts = item.split("=");
+            int number = Integer.parseInt(parts[0].trim());
+            int count = Integer.parseInt(parts[1].trim());
+            int i = 0;
+            while (i < all.length && Pieces.pieceNumber(all[i]) != number) i++;
+            if (i == all.length) throw new IllegalArgumentException("no piece number " + number);
+            if (count < 0) throw new IllegalArgumentException("negative count for piece " + number);
+            counts[i] = count;
+        }
+        int size = 0;
+        for (int count : counts) size += count;
+        int[] mix = new int[size];
+        for (int i = 0, n = 0; i < all.length; i++)
+            for (int k = 0; k < counts[i]; k++) mix[n++] = all[i];
+        return mix;
+    }
+
+    private WoodsyGameData newGame(ArrayList<String> ids, long bagSeed) {
+        // A new game, with the scoring constants and tile mix changed if any were given.
+        if (this.pointsForGold < 0 && this.pointsForSilver < 0 && this.maxPointsForGoal < 0 && this.tileMix == null)
+            return new WoodsyGameData(ids, bagSeed);
+        final int gold = this.pointsForGold, silver = this.pointsForSilver, goal = this.maxPointsForGoal;
+        final int[] tiles = this.tileMix;
+        return new WoodsyGameData(ids, bagSeed) {
+            @Override public int pointsForGold() { return (gold < 0) ? super.pointsForGold() : gold; }
+            @Override public int pointsForSilver() { return (silver < 0) ? super.pointsForSilver() : silver; }
+            @Override public int maxPointsForGoal() { return (goal < 0) ? super.maxPointsForGoal() : goal; }
+            @Override public int[] tileMix() { return (tiles == null) ? super.tileMix() : tiles; }
+        };
+    }
+
+    void playGame(long seed, WoodsySimulationStats stats) {
+        // Plays one game: the bag is shuffled from seed, and the players' choices come from a
+        // generator split off from it.
+        ArrayList<String> ids = new ArrayList<String>();
+        for (int seat = 0; seat < this.players.length; seat++) ids.add("seat" + (seat + 1));
+        WoodsyRandom rnd = new WoodsyRandom(seed).split();
+        WoodsyGameData game = this.newGame(ids, seed);
+        int[] actions = new int[WoodsyBoardData.CELLS + 2];
+        int turns = 0;
+        boolean completedBoard = false;
+        while (!game.gameOver() && turns < MAX_TURNS) {
+            int seat = turns % this.players.length;
+            game.beginTurn(ids.get(seat));
+            int moves = 0;
+            int n;
+            while (moves++ < MAX_MOVES && (n = WoodsyAI.listActions(game, actions)) > 0) {
+                int action = this.players[seat].choose(game, actions, n, rnd);
+                if (action == WoodsyAI.STOP || !this.playAndRecord(game, action, stats)) break;
+            }
+            game.endTurn();
+            if (game.gameOver() && game.getCurrentBoard().isWinningBoard()) completedBoard = true;
+            turns++;
+        }
+        // tally the winners (there can be several, separated by commas) and the scores.
+        String[] winners = game.getWinner().split(", ");
+        for (int seat = 0; seat < this.players.length; seat++) {
+            stats.addScore(seat, game.getScore(ids.get(seat)));
+            for (String thisWinner : winners)
+                if (thisWinner.equals(ids.get(seat))) stats.addWin(seat);
+        }
+        stats.addGame(turns, completedBoard, game.gameOver() ? winners.length : 0);
+    }
+
+    private boolean playAndRecord(WoodsyGameData game, int action, WoodsySimulationStats stats) {
+        // Makes a move the same way WoodsyAI.applyAction does, and records where the points came
+        // from and how the tile was used.
+        int p = game.getNextPiece();
+        if (action == WoodsyAI.DISCARD) {
+            if (Pieces.isFailurePiece(game.playPieceDiscard(p))) return false;
+            stats.addTile(WoodsySimulationStats.TILE_DISCARDED, p);
+            return true;
+        }
+        boolean walking = game.movingPerson();
+        int target = game.getCurrentBoard().getCellAt(action);
+        String id = game.getCurrentParticipant();
+        int before = game.getScore(id);
+        if (!WoodsyAI.applyAction(game, action)) return false;
+        if (walking) {
+            // a step: coins on the cell stepped onto, and the rest is from reaching the house.
+            int gold = Pieces.gold(target) ? game.pointsForGold() : 0;
+            int silver = Pieces.silver(target) ? game.pointsForSilver() : 0;
+            stats.addCoins(gold, silver);
+            if (Pieces.houseNumber(target) > 0 && Pieces.houseNumber(target) == Pieces.personNumber(game.getCurrentBoard().getCellAt(action)))
+                stats.addGoal(game.getScore(id) - before - gold - silver);
+        } else if (Pieces.isTile(p)) {
+            stats.addTile(Pieces.personNumber(target) > 0 ? WoodsySimulationStats.TILE_WALKED : WoodsySimulationStats.TILE_PLACED, p);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//
+//  WoodsyMatchServiceStub: a stand-in for the turn-based match service, kept in memory, that
+//  referees every turn it is sent.  It lets the validator be run and load-tested on one machine
+//  with no network and no Play Games account.
+//
+//  Like the real service, a match knows whose turn it is and how many turns have been taken;
+//  a turn from another player already in the game, or with the wrong turn counter, is turned
+//  away.  Everything else is up to WoodsyTurnValidator.  A turn that isn't VALID changes
+//  nothing, so the client can send it again properly.
+//
+//  takeTurn can be called from any number of threads at once: turns in the same match wait
+//  for each other, turns in different matches don't, and each thread has its own validator.
+//  The counts of each result are kept for the report.
+//
+
+public class WoodsyMatchServiceStub {
+    private static class Match {
+        WoodsyGameData game;        // null until the first turn
+        int turnCounter;            // turns taken so far
+        String nextParticipant;     // whose turn it is, or null for anyone (the first turn)
+    }
+
+    private ConcurrentHashMap<String, Match> matches = new ConcurrentHashMap<String, Match>();
+    private ThreadLocal<WoodsyTurnValidator> validators = new ThreadLocal<WoodsyTurnValidator>() {
+        @Override protected WoodsyTurnValidator initialValue() { return new WoodsyTurnValidator(); }
+    };
+    private LongAdder[] results = new LongAdder[WoodsyTurnValidator.NUMBER_OF_RESULTS];
+    private LongAdder validatingNanos = new LongAdder();
+
+    public WoodsyMatchServiceStub() {
+        for (int i = 0; i < this.results.length; i++) this.results[i] = new LongAdder();
+    }
+
+    public void createMatch(String matchId) {
+        this.matches.putIfAbsent(matchId, new Match());
+    }
+
+    public WoodsyGameData getGame(String matchId) {
+        // the state after the last valid turn, or null if there hasn't been one.
+        Match m = this.matches.get(matchId);
+        if (m == null) return null;
+        synchronized (m) {
+            return m.game;
+        }
+    }
+
+    public int takeTurn(String matchId, byte[] payload) {
+        // Referees a turn sent for a match (WoodsyTurn.persist's bytes) and, if it is valid,
+        // makes it the match's state.  Returns one of WoodsyTurnValidator's result codes.
+        Match m = this.matches.get(matchId);
+        if (m == null) throw new IllegalArgumentException("no match " + matchId);
+        long start = System.nanoTime();
+        int result;
+        synchronized (m) {
+            result = this.referee(m, payload);
+        }
+        this.validatingNanos.add(System.nanoTime() - start);
+        this.results[result].increment();
+        return result;
+    }
+
+    private int referee(Match m, byte[] payload) {
+        WoodsyTurn turn;
+        try {
+            turn = WoodsyTurn.readFrom(ByteBuffer.wrap(payload));
+        } catch (RuntimeException e) {
+            return WoodsyTurnValidator.BAD_PAYLOAD;
+        }
+        if (turn.turnCounter != m.turnCounter + 1) return WoodsyTurnValidator.WRONG_TURN_COUNTER;
+        // (someone who isn't in the game yet can join, as with automatching, while there's room)
+        if (m.nextParticipant != null && !m.nextParticipant.equals(turn.participantId) && m.game.getBoard(turn.participantId) != null)
+            return WoodsyTurnValidator.WRONG_PARTICIPANT;
+        if (m.game != null && m.game.getBoard(turn.participantId) == null && m.game.participantCount() >= WoodsyGameData.MAX_PARTICIPANTS)
+            return WoodsyTurnValidator.WRONG_PARTICIPANT;
+        WoodsyTurnValidator validator = this.validators.get();
+        int result = validator.validate(m.game, turn);
+        if (result != WoodsyTurnValidator.VALID) return result;
+        m.game = validator.game();
+        m.turnCounter = turn.turnCounter;
+        m.nextParticipant = m.game.getNextParticipantId(turn.participantId);
+        return result;
+    }
+
+    //-- Counts
+    public long turns() {
+        long n = 0;
+        for (LongAdder r : this.results) n += r.sum();
+        return n;
+    }
+
+    public long count(int result) { return this.results[result].sum(); }
+
+    public double validatingSeconds() {
+        // time spent refereeing, added up over all the threads.
+        return this.validatingNanos.sum() / 1e9;
+    }
+}
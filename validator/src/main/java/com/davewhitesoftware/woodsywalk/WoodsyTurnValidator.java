@@ -0,0 +1,115 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+//
+//  WoodsyTurnValidator: referees one turn.  Given the state before the turn and the turn as
+//  it was sent (a WoodsyTurn), it reads the state the turn claims to lead to, plays the turn's
+//  moves again on a fork of the state before with WoodsyGameData.applyTurn, and checks that
+//  every move was legal and that the result is exactly the state claimed.
+//
+//  The first turn of a match has no state before it.  Its state has to be a keyframe, and the
+//  turn is played on a freshly dealt game with the same participants and bag seed, so a client
+//  can't start a match from a board it made up.
+//
+//  The result is one of the codes below.  WRONG_PARTICIPANT and WRONG_TURN_COUNTER are about
+//  the match rather than the rules, and are checked by the match service (see
+//  WoodsyMatchServiceStub), not here.
+//
+//  An object keeps its buffers between turns, so make one per thread and reuse it.
+//
+
+public class WoodsyTurnValidator {
+    public static final int VALID = 0;
+    public static final int BAD_PAYLOAD = 1;            // the turn or its state couldn't be read, or the turn couldn't be played at all
+    public static final int WRONG_BASE = 2;             // the state doesn't follow on from the state before
+    public static final int GAME_OVER = 3;              // the game had already finished
+    public static final int ILLEGAL_MOVE = 4;           // a move broke the rules; see failedMove and ruleError
+    public static final int STATE_MISMATCH = 5;         // the moves are legal but lead somewhere else
+    public static final int WRONG_PARTICIPANT = 6;      // it wasn't this participant's turn
+    public static final int WRONG_TURN_COUNTER = 7;     // a turn sent twice, or one missed out
+    public static final int NUMBER_OF_RESULTS = 8;
+    private static final String[] NAMES = { "valid", "bad payload", "wrong base", "game over",
+            "illegal move", "state mismatch", "wrong participant", "wrong turn counter" };
+
+    private WoodsyStateDelta delta = new WoodsyStateDelta();
+    private ByteBuffer mine = ByteBuffer.allocate(4096);
+    private ByteBuffer theirs = ByteBuffer.allocate(4096);
+    private WoodsyGameData game;            // the state after the last turn found valid
+    private int failedMove = -1;
+    private int ruleError = WoodsyRules.OK;
+
+    public static String name(int result) { return NAMES[result]; }
+
+    public WoodsyGameData game() { return this.game; }
+    public int failedMove() { return this.failedMove; }
+    public int ruleError() { return this.ruleError; }
+
+    public int validate(WoodsyGameData previous, WoodsyTurn turn) {
+        // Checks turn against the state before it (null for the first turn of a match).  If it
+        // is VALID, game() is the state after it.  previous is not changed.
+        this.game = null;
+        this.failedMove = -1;
+        this.ruleError = WoodsyRules.OK;
+        if (turn.participantId.length() == 0) return BAD_PAYLOAD;
+        WoodsyGameData claimed;
+        try {
+            if (previous == null && !WoodsyStateDelta.isKeyframe(turn.state)) return BAD_PAYLOAD;
+            claimed = this.delta.read(previous, turn.state);
+        } catch (IllegalStateException e) {
+            // a delta from some other state, or one that doesn't add up once applied
+            return WRONG_BASE;
+        } catch (RuntimeException e) {
+            // truncated, or a bad length or version
+            return BAD_PAYLOAD;
+        }
+        WoodsyGameData before = previous;
+        if (before == null) {
+            before = new WoodsyGameData(WoodsyTurnValidator.participants(claimed), claimed.getBagSeed());
+        } else if (before.gameOver()) {
+            return GAME_OVER;
+        }
+        // (someone new can join, but not once the game is full)
+        if (before.getBoard(turn.participantId) == null && before.participantCount() >= WoodsyGameData.MAX_PARTICIPANTS)
+            return BAD_PAYLOAD;
+        WoodsyGameData replay = before.fork();
+        int failed;
+        try {
+            failed = replay.applyTurn(turn.participantId, turn.moves);
+        } catch (RuntimeException e) {
+            // anything else the game can't play is the turn's fault, not the referee's
+            return BAD_PAYLOAD;
+        }
+        if (failed >= 0) {
+            this.failedMove = failed;
+            this.ruleError = replay.getLastError();
+            return ILLEGAL_MOVE;
+        }
+        if (!this.sameState(replay, claimed)) return STATE_MISMATCH;
+        this.game = replay;
+        return VALID;
+    }
+
+    private static ArrayList<String> participants(WoodsyGameData game) {
+        ArrayList<String> ids = new ArrayList<String>(game.participantCount());
+        for (int slot = 0; slot < game.participantCount(); slot++) ids.add(game.getParticipantId(slot));
+        return ids;
+    }
+
+    private boolean sameState(WoodsyGameData a, WoodsyGameData b) {
+        // compares the two games byte for byte in the binary format.
+        this.mine = WoodsyTurnValidator.encode(a, this.mine);
+        this.theirs = WoodsyTurnValidator.encode(b, this.theirs);
+        return this.mine.equals(this.theirs);
+    }
+
+    private static ByteBuffer encode(WoodsyGameData game, ByteBuffer buffer) {
+        int size = game.encodedSize();
+        if (buffer.capacity() < size) buffer = ByteBuffer.allocate(size * 2);
+        buffer.clear();
+        game.writeTo(buffer);
+        buffer.flip();
+        return buffer;
+    }
+}
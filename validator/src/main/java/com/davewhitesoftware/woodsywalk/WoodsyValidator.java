@@ -0,0 +1,351 @@
+package com.davewhitesoftware.woodsywalk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//
+//  WoodsyValidator: referees Woodsy Walk turns off the phone, on every core, and reports how
+//  many turns a second it gets through.  All the turns go to a WoodsyMatchServiceStub, which
+//  checks them with WoodsyTurnValidator.
+//
+//  Where the turns come from:
+//    --load          (the default) simulated players on every thread play random matches
+//                    against the stub, and send a tampered turn (an illegal move, moves that
+//                    don't match the state, or a turn sent twice) --tamper percent of the time
+//                    before the real one.  The report says how many tampered turns got through,
+//                    which should be none.
+//    --dir DIR       turn files: one directory per match, with the match's turns in it in name
+//                    order, each a WoodsyTurn as persist() writes it.  Matches are checked in
+//                    parallel, and the turns of one match in order.
+//    --stream FILE   turns from many matches mixed together in one file (or - for standard
+//                    input): for each turn, the match id and then the turn, each as a 4-byte
+//                    length and the bytes.  Each match is handed to the same thread every time,
+//                    so its turns stay in order.
+//  --write DIR and --write-stream FILE make turn files for the last two from simulated matches.
+//
+//  Usage: WoodsyValidator [--load | --dir DIR | --stream FILE | --write DIR | --write-stream FILE]
+//                         [--matches N] [--threads N] [--players N] [--tamper PERCENT] [--seed N]
+//
+
+public class WoodsyValidator {
+    private static final int MAX_TURNS = 1000;      // safety limit on the length of one match
+    private static final int MAX_MOVES = 64;        // safety limit on the moves in one turn
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private int matches = 1000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int players = 2;
+    private int tamperPercent = 5;
+    private long seed = 1;
+    private WoodsyMatchServiceStub service = new WoodsyMatchServiceStub();
+    private LongAdder tampered = new LongAdder();
+    private LongAdder tamperedAccepted = new LongAdder();
+    private LongAdder honestRefused = new LongAdder();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        WoodsyValidator v = new WoodsyValidator();
+        String mode = "--load", path = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = (i + 1 < args.length) ? args[++i] : "";
+            if (arg.equals("--load")) { mode = arg; i--; }
+            else if (arg.equals("--dir") || arg.equals("--stream") || arg.equals("--write") || arg.equals("--write-stream")) { mode = arg; path = value; }
+            else if (arg.equals("--matches")) v.matches = Integer.parseInt(value);
+            else if (arg.equals("--threads")) v.threads = Integer.parseInt(value);
+            else if (arg.equals("--players")) v.players = Integer.parseInt(value);
+            else if (arg.equals("--tamper")) v.tamperPercent = Integer.parseInt(value);
+            else if (arg.equals("--seed")) v.seed = Long.parseLong(value);
+            else {
+                System.err.println("unknown option " + arg);
+                System.exit(2);
+            }
+        }
+        if (v.players < 2 || v.players > WoodsyGameData.MAX_PARTICIPANTS) throw new IllegalArgumentException("need 2 to " + WoodsyGameData.MAX_PARTICIPANTS + " players");
+        if (mode.equals("--write")) { v.writeDirectory(new File(path)); return; }
+        if (mode.equals("--write-stream")) { v.writeStream(new File(path)); return; }
+        long start = System.nanoTime();
+        if (mode.equals("--load")) v.load();
+        else if (mode.equals("--dir")) v.checkDirectory(new File(path));
+        else v.checkStream(path.equals("-") ? System.in : new FileInputStream(path));
+        v.print(System.out, (System.nanoTime() - start) / 1e9);
+    }
+
+    //
+    //  A simulated player's side of one match: the game as they know it, and the turn they
+    //  are about to send.
+    //
+    private class SimulatedMatch {
+        String id;
+        ArrayList<String> ids = new ArrayList<String>();
+        WoodsyGameData game;            // the state after the last turn the service took
+        WoodsyGameData next;            // the state after the turn being sent
+        int[] moves = new int[MAX_MOVES];
+        int moveCount;
+        int turnCounter;
+        WoodsyRandom rnd;
+        WoodsyStateDelta delta = new WoodsyStateDelta();
+
+        SimulatedMatch(long number) {
+            long matchSeed = WoodsyHash.mix(WoodsyValidator.this.seed * 0x9E3779B97F4A7C15L + number);
+            this.id = "match" + number;
+            for (int seat = 1; seat <= WoodsyValidator.this.players; seat++) this.ids.add(this.id + "-p" + seat);
+            this.game = new WoodsyGameData(this.ids, matchSeed);
+            this.rnd = new WoodsyRandom(matchSeed).split();
+        }
+
+        boolean over() { return this.game.gameOver() || this.turnCounter >= MAX_TURNS; }
+
+        String player() { return this.ids.get(this.turnCounter % this.ids.size()); }
+
+        void playTurn() {
+            // plays the next turn at random, remembering the moves.
+            int[] actions = new int[WoodsyBoardData.CELLS + 2];
+            this.next = this.game.fork();
+            this.next.beginTurn(this.player());
+            this.moveCount = 0;
+            int n;
+            while (this.moveCount < MAX_MOVES && (n = WoodsyAI.listActions(this.next, actions)) > 0) {
+                int action = actions[this.rnd.nextInt(n)];
+                if (action == WoodsyAI.STOP || !WoodsyAI.applyAction(this.next, action)) break;
+                this.moves[this.moveCount++] = action;
+            }
+            this.next.endTurn();
+        }
+
+        byte[] payload(int[] moves, int turnCounter) {
+            WoodsyTurn turn = new WoodsyTurn();
+            turn.turnCounter = turnCounter;
+            turn.participantId = this.player();
+            turn.moves = moves;
+            turn.state = this.delta.toByteArray(this.turnCounter == 0 ? null : this.game, this.next, this.turnCounter + 1);
+            return turn.persist();
+        }
+
+        byte[] honest() {
+            return this.payload(Arrays.copyOf(this.moves, this.moveCount), this.turnCounter + 1);
+        }
+
+        byte[] tampered() {
+            // the turn, changed so that the service ought to refuse it.
+            switch (this.rnd.nextInt(3)) {
+                case 0:
+                    // an extra move that can't be legal
+                    int[] extra = Arrays.copyOf(this.moves, this.moveCount + 1);
+                    extra[this.moveCount] = WoodsyBoardData.CELLS + 1;
+                    return this.payload(extra, this.turnCounter + 1);
+                case 1:
+                    // the state after all the moves, but not all the moves
+                    if (this.moveCount > 0) return this.payload(Arrays.copyOf(this.moves, this.moveCount - 1), this.turnCounter + 1);
+                    return this.payload(new int[] { WoodsyBoardData.CELLS + 1 }, this.turnCounter + 1);
+                default:
+                    // the turn counter of the turn before
+                    return this.payload(Arrays.copyOf(this.moves, this.moveCount), this.turnCounter);
+            }
+        }
+
+        void accepted() {
+            this.game = this.next;
+            this.turnCounter++;
+        }
+    }
+
+    //-- Simulated load
+    void load() throws InterruptedException {
+        final AtomicLong nextMatch = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        for (int t = 0; t < this.threads; t++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    long number;
+                    while ((number = nextMatch.getAndIncrement()) < WoodsyValidator.this.matches)
+                        WoodsyValidator.this.playMatch(new SimulatedMatch(number));
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private void playMatch(SimulatedMatch m) {
+        this.service.createMatch(m.id);
+        while (!m.over()) {
+            m.playTurn();
+            if (m.rnd.nextInt(100) < this.tamperPercent) {
+                this.tampered.increment();
+                if (this.service.takeTurn(m.id, m.tampered()) == WoodsyTurnValidator.VALID) {
+                    // it got through, so the match has moved on without us; stop here.
+                    this.tamperedAccepted.increment();
+                    return;
+                }
+            }
+            if (this.service.takeTurn(m.id, m.honest()) != WoodsyTurnValidator.VALID) {
+                this.honestRefused.increment();
+                return;
+            }
+            m.accepted();
+        }
+    }
+
+    //-- Turn files
+    void writeDirectory(File dir) throws IOException {
+        for (int number = 0; number < this.matches; number++) {
+            SimulatedMatch m = new SimulatedMatch(number);
+            File matchDir = new File(dir, m.id);
+            if (!matchDir.mkdirs() && !matchDir.isDirectory()) throw new IOException("can't make " + matchDir);
+            while (!m.over()) {
+                m.playTurn();
+                Files.write(new File(matchDir, String.format("turn%04d.bin", m.turnCounter + 1)).toPath(), m.honest());
+                m.accepted();
+            }
+        }
+    }
+
+    void writeStream(File file) throws IOException {
+        // The matches' turns are mixed together a turn at a time, as they would arrive.
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            ArrayList<SimulatedMatch> playing = new ArrayList<SimulatedMatch>();
+            for (int number = 0; number < this.matches; number++) playing.add(new SimulatedMatch(number));
+            while (!playing.isEmpty()) {
+                for (int i = playing.size() - 1; i >= 0; i--) {
+                    SimulatedMatch m = playing.get(i);
+                    if (m.over()) { playing.remove(i); continue; }
+                    m.playTurn();
+                    WoodsyValidator.writeRecord(out, m.id.getBytes(UTF8));
+                    WoodsyValidator.writeRecord(out, m.honest());
+                    m.accepted();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    void checkDirectory(File dir) throws InterruptedException {
+        File[] matchDirs = dir.listFiles();
+        if (matchDirs == null) throw new IllegalArgumentException("not a directory: " + dir);
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        for (final File matchDir : matchDirs) {
+            if (!matchDir.isDirectory()) continue;
+            pool.execute(new Runnable() {
+                public void run() {
+                    WoodsyValidator.this.checkMatchDirectory(matchDir);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    private void checkMatchDirectory(File matchDir) {
+        File[] turns = matchDir.listFiles();
+        Arrays.sort(turns);
+        String id = matchDir.getName();
+        this.service.createMatch(id);
+        for (File turn : turns) {
+            try {
+                this.service.takeTurn(id, Files.readAllBytes(turn.toPath()));
+            } catch (IOException e) {
+                System.err.println("can't read " + turn + ": " + e);
+            }
+        }
+    }
+
+    void checkStream(InputStream stream) throws IOException, InterruptedException {
+        // One reader (this thread) hands each turn to the worker for its match.
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        final byte[][] done = new byte[0][];
+        ArrayList<BlockingQueue<byte[][]>> queues = new ArrayList<BlockingQueue<byte[][]>>();
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        for (int t = 0; t < this.threads; t++) {
+            final BlockingQueue<byte[][]> queue = new ArrayBlockingQueue<byte[][]>(1024);
+            queues.add(queue);
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        byte[][] record;
+                        while ((record = queue.take()) != done) {
+                            String id = new String(record[0], UTF8);
+                            try {
+                                WoodsyValidator.this.service.createMatch(id);
+                                WoodsyValidator.this.service.takeTurn(id, record[1]);
+                            } catch (RuntimeException e) {
+                                // keep going: a worker that stopped would stop draining its queue, and the reader would wait forever
+                                System.err.println("match " + id + ": " + e);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        try {
+            while (true) {
+                byte[] id = WoodsyValidator.readRecord(in);
+                if (id == null) break;
+                byte[] payload = WoodsyValidator.readRecord(in);
+                if (payload == null) break;
+                int worker = (Arrays.hashCode(id) & 0x7FFFFFFF) % this.threads;
+                queues.get(worker).put(new byte[][] { id, payload });
+            }
+        } finally {
+            for (BlockingQueue<byte[][]> queue : queues) queue.put(done);
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            in.close();
+        }
+    }
+
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        // a 4-byte length and that many bytes, or null at the end of the stream.
+        int n;
+        try {
+            n = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (n < 0 || n > (1 << 24)) throw new IOException("bad record length " + n);
+        byte[] bytes = new byte[n];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    //-- Reporting
+    void print(PrintStream out, double seconds) {
+        long turns = this.service.turns();
+        out.printf("turns:              %d in %.2f s (%.0f turns/s)%n", turns, seconds, turns / Math.max(seconds, 1e-9));
+        out.printf("refereeing:         %.2f s over %d threads (%.0f turns/s per thread)%n", this.service.validatingSeconds(),
+                this.threads, turns / Math.max(this.service.validatingSeconds(), 1e-9));
+        for (int result = 0; result < WoodsyTurnValidator.NUMBER_OF_RESULTS; result++)
+            if (this.service.count(result) > 0) out.printf("  %-18s %d%n", WoodsyTurnValidator.name(result) + ":", this.service.count(result));
+        if (this.tampered.sum() > 0 || this.honestRefused.sum() > 0)
+            out.printf("tampered turns:     %d sent, %d got through; honest turns refused: %d%n",
+                    this.tampered.sum(), this.tamperedAccepted.sum(), this.honestRefused.sum());
+    }
+}